@@ -0,0 +1,40 @@
+package sh.buildit.credhub;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * Changes the environment of the benchmark JVM, so each forked trial can run {@link CredHubKafkaEnvProcessor} with
+ * its own {@code CREDHUB_*} settings. On JDK 9 and later the fork needs
+ * {@code --add-opens java.base/java.util=ALL-UNNAMED}, which the {@code jmh-jdk9} profile passes.
+ */
+final class BenchmarkEnvironment {
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * Sets each variable, or removes it when its value is {@code null}.
+     */
+    static void set(Map<String, String> variables) {
+        final Map<String, String> environment = writable(System.getenv());
+        variables.forEach((name, value) -> {
+            if (value == null) {
+                environment.remove(name);
+            } else {
+                environment.put(name, value);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> writable(Map<String, String> environment) {
+        try {
+            // System.getenv() is a Collections.unmodifiableMap view of the map System.getenv(String) reads
+            final Field field = environment.getClass().getDeclaredField("m");
+            field.setAccessible(true);
+            return (Map<String, String>) field.get(environment);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Unable to change the environment of the benchmark JVM", e);
+        }
+    }
+}
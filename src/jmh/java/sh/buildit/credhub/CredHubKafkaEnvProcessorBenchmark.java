@@ -0,0 +1,104 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CredHubKafkaEnvProcessor} end to end, with whatever {@code CREDHUB_*} environment the benchmark JVM is
+ * started with; {@code CREDHUB_NAME} must be {@value #SERVICE_NAME}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CredHubKafkaEnvProcessorBenchmark {
+    static final String SERVICE_NAME = "benchmark-credhub";
+    static final int BINDINGS = 500;
+
+    private final CredHubKafkaEnvProcessor processor = new CredHubKafkaEnvProcessor();
+    private final List<Map<String, Object>> processed = new ArrayList<>();
+    private CfService service;
+    private final List<CfService> bindings = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void service() {
+        final Map<String, Object> serviceData = new HashMap<>();
+        serviceData.put("tags", Collections.singletonList("credhub"));
+        serviceData.put("name", SERVICE_NAME);
+        service = new CfService(serviceData);
+
+        for (int i = 0; i < BINDINGS; i++) {
+            final Map<String, Object> bindingData = new HashMap<>();
+            bindingData.put("tags", i % 2 == 0 ? Collections.singletonList("credhub") : Collections.emptyList());
+            bindingData.put("name", "service-" + i);
+            bindings.add(new CfService(bindingData));
+        }
+        bindings.add(service);
+    }
+
+    /**
+     * Deletes the stores written during the iteration, so the temporary directory does not fill up.
+     */
+    @TearDown(Level.Iteration)
+    public void deleteStores() throws IOException {
+        for (Map<String, Object> properties : processed) {
+            for (Object value : properties.values()) {
+                if (value instanceof String && ((String) value).startsWith("file://")) {
+                    Files.deleteIfExists(Paths.get(URI.create((String) value)));
+                }
+            }
+        }
+        processed.clear();
+    }
+
+    @Benchmark
+    public boolean accept() {
+        return processor.accept(service);
+    }
+
+    /**
+     * Every binding of an application with {@value #BINDINGS} other services offered in turn, as cfenv does.
+     */
+    @Benchmark
+    public int acceptBindings() {
+        int accepted = 0;
+        for (CfService binding : bindings) {
+            if (processor.accept(binding)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Benchmark
+    public Map<String, Object> process(GeneratedStores stores) {
+        final Map<String, Object> properties = new HashMap<>();
+        processor.process(stores.credentials, properties);
+        processed.add(properties);
+        return properties;
+    }
+}
@@ -0,0 +1,53 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trust store with {@link #entries} generated CA certificates and a key store with one key entry signed by the
+ * first of them, both of {@link #type}, encoded the way CredHub hands them over.
+ */
+@State(Scope.Benchmark)
+public class GeneratedStores {
+    static final String PASSWORD = "changeit";
+
+    @Param({"1", "100", "1000", "5000"})
+    public int entries;
+
+    @Param({"JKS", "PKCS12"})
+    public String type;
+
+    String encodedTrustStore;
+    String encodedKeyStore;
+    CfCredentials credentials;
+
+    @Setup
+    public void generate() {
+        final TestCertificates.Issued ca = TestCertificates.selfSignedCa("Benchmark CA");
+        final KeyStore trustStore = TestCertificates.trustStore(type, entries - 1);
+        try {
+            trustStore.setCertificateEntry("benchmark-ca", ca.certificate);
+        } catch (KeyStoreException e) {
+            throw new RuntimeException(e);
+        }
+        encodedTrustStore = TestCertificates.encode(trustStore, PASSWORD);
+        encodedKeyStore = TestCertificates.encode(TestCertificates.keyStore(type, PASSWORD, "client", ca), PASSWORD);
+
+        final Map<String, Object> credentialsData = new HashMap<>();
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION, encodedKeyStore);
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_PASSWORD, PASSWORD);
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_TYPE, type);
+        credentialsData.put(CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION, encodedTrustStore);
+        credentialsData.put(CredHubKafkaEnvProcessor.TRUST_STORE_PASSWORD, PASSWORD);
+        credentialsData.put(CredHubKafkaEnvProcessor.TRUST_STORE_TYPE, type);
+        credentials = new CfCredentials(credentialsData);
+    }
+}
@@ -0,0 +1,147 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent TLS handshakes against a local {@link TestBroker}, by clients configured only from the properties
+ * {@link CredHubKafkaEnvProcessor#process} emits. Each {@code variant} materializes the same CredHub stores another
+ * way, and {@code entries} CA certificates are added to the trust store. {@code Throughput} gives handshakes per
+ * millisecond, {@code SampleTime} the latency percentiles, and the {@code gc} profiler the allocation per handshake.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(8)
+@Fork(1)
+public class HandshakeBenchmark {
+    private static final String HOST = "localhost";
+
+    @State(Scope.Benchmark)
+    public static class Cluster {
+        /**
+         * {@code jks} writes the uploaded JKS stores, {@code pkcs12} and {@code pem-file} convert them with
+         * {@code CREDHUB_STORE_FORMAT}, {@code pem} publishes them inline and {@code shared} shares one
+         * {@code SSLContext}.
+         */
+        @Param({"jks", "pkcs12", "pem-file", "pem", "shared"})
+        public String variant;
+
+        @Param({"1", "100", "1000"})
+        public int entries;
+
+        TestBroker broker;
+        Map<String, Object> properties;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            BenchmarkEnvironment.set(environment(variant));
+
+            final KeyStore trustStore = KeyStores.load(TestStores.encoded(TestStores.TRUST_STORE), TestStores.PASSWORD, TestStores.TYPE);
+            final KeyStore generated = TestCertificates.trustStore(TestStores.TYPE, entries);
+            for (String alias : Collections.list(generated.aliases())) {
+                trustStore.setCertificateEntry(alias, generated.getCertificate(alias));
+            }
+            final Map<String, Object> credentialsData = TestStores.credentialsData();
+            credentialsData.put(CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION, TestCertificates.encode(trustStore, TestStores.PASSWORD));
+            properties = new HashMap<>();
+            new CredHubKafkaEnvProcessor().process(new CfCredentials(credentialsData), properties);
+
+            broker = new TestBroker();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            broker.close();
+            for (Object value : properties.values()) {
+                if (value instanceof String && ((String) value).startsWith("file://")) {
+                    Files.deleteIfExists(Paths.get(URI.create((String) value)));
+                }
+            }
+        }
+
+        private static Map<String, String> environment(String variant) {
+            final Map<String, String> environment = new HashMap<>();
+            environment.put(CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, CredHubKafkaEnvProcessorBenchmark.SERVICE_NAME);
+            environment.put(CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, null);
+            environment.put(CredHubKafkaEnvProcessor.CREDHUB_STORE_FORMAT_ENV_VAR, null);
+            switch (variant) {
+                case "jks":
+                    break;
+                case "pkcs12":
+                    environment.put(CredHubKafkaEnvProcessor.CREDHUB_STORE_FORMAT_ENV_VAR, "pkcs12");
+                    break;
+                case "pem-file":
+                    environment.put(CredHubKafkaEnvProcessor.CREDHUB_STORE_FORMAT_ENV_VAR, "pem");
+                    break;
+                case "pem":
+                    environment.put(CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, "pem");
+                    break;
+                case "shared":
+                    environment.put(CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, "shared");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown variant " + variant);
+            }
+            return environment;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        KafkaClientSsl ssl;
+
+        @Setup(Level.Trial)
+        public void configure(Cluster cluster) {
+            ssl = new KafkaClientSsl(cluster.properties);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            ssl.close();
+        }
+    }
+
+    /**
+     * A new client per connection, as when consumers and producers start: each loads the stores and handshakes,
+     * resuming a session only if it shares an {@code SSLContext} with earlier clients.
+     */
+    @Benchmark
+    public void connect(Cluster cluster) throws IOException {
+        try (final KafkaClientSsl client = new KafkaClientSsl(cluster.properties)) {
+            cluster.broker.exchange(client.createEngine(HOST, cluster.broker.port()));
+        }
+    }
+
+    /**
+     * A new connection from a long-lived client, as after a broker roll.
+     */
+    @Benchmark
+    public void reconnect(Cluster cluster, Client client) throws IOException {
+        cluster.broker.exchange(client.ssl.createEngine(HOST, cluster.broker.port()));
+    }
+}
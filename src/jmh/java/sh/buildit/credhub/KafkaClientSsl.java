@@ -0,0 +1,179 @@
+package sh.buildit.credhub;
+
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.SslConfigs;
+import org.apache.kafka.common.network.Mode;
+import org.apache.kafka.common.security.ssl.SslFactory;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TLS setup of one Kafka client, configured only from the properties {@link CredHubKafkaEnvProcessor#process}
+ * emits, mapped to Kafka configs the way Spring Boot maps {@code spring.kafka.ssl.*} and
+ * {@code spring.kafka.properties}. Kafka clients 2.6 cannot read PEM stores, so those are loaded the way clients
+ * 2.7 and later load them: into an in-memory key store behind a JDK {@link SSLContext}.
+ */
+final class KafkaClientSsl implements AutoCloseable {
+    private static final Pattern PEM_BLOCK = Pattern.compile("-----BEGIN ([A-Z ]+)-----([^-]+)-----END \\1-----");
+
+    private final SslFactory sslFactory;
+    private final SSLContext pemContext;
+    private final String endpointIdentification;
+
+    KafkaClientSsl(Map<String, Object> properties) {
+        final Map<String, Object> configs = configs(properties);
+        endpointIdentification = (String) configs.get(SslConfigs.SSL_ENDPOINT_IDENTIFICATION_ALGORITHM_CONFIG);
+        if (CredHubKafkaEnvProcessor.PEM_STORE_TYPE.equals(configs.get(SslConfigs.SSL_KEYSTORE_TYPE_CONFIG))) {
+            sslFactory = null;
+            pemContext = pemContext(configs);
+        } else {
+            sslFactory = new SslFactory(Mode.CLIENT);
+            sslFactory.configure(configs);
+            pemContext = null;
+        }
+    }
+
+    SSLEngine createEngine(String host, int port) {
+        if (sslFactory != null) {
+            return sslFactory.createSslEngine(host, port);
+        }
+        final SSLEngine sslEngine = pemContext.createSSLEngine(host, port);
+        sslEngine.setUseClientMode(true);
+        final SSLParameters sslParameters = sslEngine.getSSLParameters();
+        sslParameters.setEndpointIdentificationAlgorithm(endpointIdentification);
+        sslEngine.setSSLParameters(sslParameters);
+        return sslEngine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sslFactory != null) {
+            sslFactory.close();
+        }
+    }
+
+    /**
+     * Parsed client SSL configs with Kafka's defaults, plus the configs Kafka does not define, as a Kafka client
+     * hands them to its channel builder.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> configs(Map<String, Object> properties) {
+        final Map<String, Object> originals = new HashMap<>();
+        store(properties, originals, CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_PROPERTY, SslConfigs.SSL_KEYSTORE_LOCATION_CONFIG);
+        store(properties, originals, CredHubKafkaEnvProcessor.KEY_STORE_PASSWORD_PROPERTY, SslConfigs.SSL_KEYSTORE_PASSWORD_CONFIG);
+        store(properties, originals, CredHubKafkaEnvProcessor.KEY_STORE_TYPE_PROPERTY, SslConfigs.SSL_KEYSTORE_TYPE_CONFIG);
+        store(properties, originals, CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION_PROPERTY, SslConfigs.SSL_TRUSTSTORE_LOCATION_CONFIG);
+        store(properties, originals, CredHubKafkaEnvProcessor.TRUST_STORE_PASSWORD_PROPERTY, SslConfigs.SSL_TRUSTSTORE_PASSWORD_CONFIG);
+        store(properties, originals, CredHubKafkaEnvProcessor.TRUST_STORE_TYPE_PROPERTY, SslConfigs.SSL_TRUSTSTORE_TYPE_CONFIG);
+        store(properties, originals, CredHubKafkaEnvProcessor.SSL_PROTOCOL_PROPERTY, SslConfigs.SSL_PROTOCOL_CONFIG);
+        final Object kafkaProperties = properties.get(CredHubKafkaEnvProcessor.KAFKA_PROPERTIES_PROPERTY);
+        if (kafkaProperties instanceof Map) {
+            originals.putAll((Map<String, Object>) kafkaProperties);
+        }
+
+        final Map<String, Object> configs = new HashMap<>(new ConfigDef().withClientSslSupport().parse(originals));
+        originals.forEach(configs::putIfAbsent);
+        return configs;
+    }
+
+    private static void store(Map<String, Object> properties, Map<String, Object> configs, String property, String config) {
+        final Object value = properties.get(property);
+        if (value == null) {
+            return;
+        }
+        // Spring Boot resolves the location as a resource and hands Kafka its file path
+        final String string = value.toString();
+        configs.put(config, string.startsWith("file:") ? Paths.get(URI.create(string)).toString() : string);
+    }
+
+    private static SSLContext pemContext(Map<String, Object> configs) {
+        try {
+            final String keyPem = configs.containsKey(CredHubKafkaEnvProcessor.KEYSTORE_KEY_PROPERTY)
+                ? configs.get(CredHubKafkaEnvProcessor.KEYSTORE_KEY_PROPERTY) + "\n"
+                + configs.get(CredHubKafkaEnvProcessor.KEYSTORE_CERTIFICATE_CHAIN_PROPERTY)
+                : read(configs.get(SslConfigs.SSL_KEYSTORE_LOCATION_CONFIG));
+            final String trustPem = configs.containsKey(CredHubKafkaEnvProcessor.TRUSTSTORE_CERTIFICATES_PROPERTY)
+                ? configs.get(CredHubKafkaEnvProcessor.TRUSTSTORE_CERTIFICATES_PROPERTY).toString()
+                : read(configs.get(SslConfigs.SSL_TRUSTSTORE_LOCATION_CONFIG));
+            final char[] password = "kafka".toCharArray();
+
+            final List<Certificate> chain = certificates(keyPem);
+            final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, null);
+            keyStore.setKeyEntry("kafka", privateKey(keyPem, chain.get(0).getPublicKey().getAlgorithm()), password,
+                chain.toArray(new Certificate[0]));
+            final KeyStore trustStore = KeyStore.getInstance("PKCS12");
+            trustStore.load(null, null);
+            final List<Certificate> trusted = certificates(trustPem);
+            for (int i = 0; i < trusted.size(); i++) {
+                trustStore.setCertificateEntry("kafka" + i, trusted.get(i));
+            }
+
+            final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(
+                (String) configs.get(SslConfigs.SSL_KEYMANAGER_ALGORITHM_CONFIG));
+            keyManagerFactory.init(keyStore, password);
+            final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(
+                (String) configs.get(SslConfigs.SSL_TRUSTMANAGER_ALGORITHM_CONFIG));
+            trustManagerFactory.init(trustStore);
+            final SSLContext sslContext = SSLContext.getInstance((String) configs.get(SslConfigs.SSL_PROTOCOL_CONFIG));
+            sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+            return sslContext;
+        } catch (GeneralSecurityException | IOException e) {
+            throw new RuntimeException("Unable to load PEM stores", e);
+        }
+    }
+
+    private static String read(Object location) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(location.toString())), StandardCharsets.US_ASCII);
+    }
+
+    private static List<Certificate> certificates(String pem) throws GeneralSecurityException {
+        final List<Certificate> certificates = new ArrayList<>();
+        final CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        final Matcher matcher = PEM_BLOCK.matcher(pem);
+        while (matcher.find()) {
+            if ("CERTIFICATE".equals(matcher.group(1))) {
+                certificates.add(certificateFactory.generateCertificate(new ByteArrayInputStream(der(matcher))));
+            }
+        }
+        return certificates;
+    }
+
+    private static PrivateKey privateKey(String pem, String algorithm) throws GeneralSecurityException {
+        final Matcher matcher = PEM_BLOCK.matcher(pem);
+        while (matcher.find()) {
+            if ("PRIVATE KEY".equals(matcher.group(1))) {
+                return KeyFactory.getInstance(algorithm).generatePrivate(new PKCS8EncodedKeySpec(der(matcher)));
+            }
+        }
+        throw new IllegalArgumentException("No unencrypted PRIVATE KEY in the key store PEM");
+    }
+
+    private static byte[] der(Matcher matcher) {
+        return Base64.getMimeDecoder().decode(matcher.group(2));
+    }
+}
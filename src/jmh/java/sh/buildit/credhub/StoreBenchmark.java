@@ -0,0 +1,86 @@
+package sh.buildit.credhub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The individual steps between a CredHub value and a usable {@link SSLContext}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+
+    @State(Scope.Thread)
+    public static class Target {
+        Path path;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException {
+            path = Files.createTempFile("credhub-benchmark", ".jks");
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Loaded {
+        KeyStore keyStore;
+        KeyStore trustStore;
+
+        @Setup(Level.Trial)
+        public void load(GeneratedStores stores) {
+            keyStore = KeyStores.load(stores.encodedKeyStore, GeneratedStores.PASSWORD, stores.type);
+            trustStore = KeyStores.load(stores.encodedTrustStore, GeneratedStores.PASSWORD, stores.type);
+        }
+    }
+
+    /**
+     * The streaming decode that {@code file} mode uses.
+     */
+    @Benchmark
+    public long decodeTo(GeneratedStores stores, Target target) throws IOException {
+        return KeyStores.decodeTo(stores.encodedTrustStore, target.path);
+    }
+
+    /**
+     * Decoding the whole value before writing it, as a baseline for {@link #decodeTo}.
+     */
+    @Benchmark
+    public Path decodeThenWrite(GeneratedStores stores, Target target) throws IOException {
+        return Files.write(target.path, Base64.getDecoder().decode(stores.encodedTrustStore));
+    }
+
+    @Benchmark
+    public KeyStore load(GeneratedStores stores) {
+        return KeyStores.load(stores.encodedTrustStore, GeneratedStores.PASSWORD, stores.type);
+    }
+
+    @Benchmark
+    public SSLContext sslContext(Loaded loaded) {
+        return SslMaterial.of(loaded.keyStore, GeneratedStores.PASSWORD, loaded.trustStore).sslContext();
+    }
+}
@@ -0,0 +1,64 @@
+package sh.buildit.credhub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating a client chain against trust stores of growing size, with the JDK trust manager and with
+ * {@link IndexedTrustManager}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrustManagerBenchmark {
+    private static final String AUTH_TYPE = "ECDHE_ECDSA";
+
+    private X509Certificate[] chain;
+    private X509TrustManager jdk;
+    private X509TrustManager indexed;
+
+    @Setup(Level.Trial)
+    public void trustManagers(GeneratedStores stores) throws Exception {
+        final KeyStore keyStore = KeyStores.load(stores.encodedKeyStore, GeneratedStores.PASSWORD, stores.type);
+        final Certificate[] certificates = keyStore.getCertificateChain("client");
+        chain = Arrays.copyOf(certificates, certificates.length, X509Certificate[].class);
+        final KeyStore trustStore = KeyStores.load(stores.encodedTrustStore, GeneratedStores.PASSWORD, stores.type);
+        final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        jdk = (X509TrustManager) trustManagerFactory.getTrustManagers()[0];
+        indexed = IndexedTrustManager.of(trustStore, false);
+    }
+
+    @Benchmark
+    public X509Certificate[] jdk() throws CertificateException {
+        jdk.checkClientTrusted(chain, AUTH_TYPE);
+        return chain;
+    }
+
+    @Benchmark
+    public X509Certificate[] indexed() throws CertificateException {
+        indexed.checkClientTrusted(chain, AUTH_TYPE);
+        return chain;
+    }
+}
@@ -0,0 +1,51 @@
+package sh.buildit.credhub;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the characters of an ASCII {@link CharSequence} as bytes, so Base64 credentials can be decoded as a stream
+ * without first copying them into a {@code byte[]}. Characters above {@code 0x7F} are rejected rather than truncated.
+ */
+final class CharSequenceInputStream extends InputStream {
+    private final CharSequence value;
+    private int position;
+
+    CharSequenceInputStream(CharSequence value) {
+        this.value = value;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return position < value.length() ? ascii(position++) : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        final int remaining = value.length() - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        final int count = Math.min(length, remaining);
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = (byte) ascii(position++);
+        }
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return value.length() - position;
+    }
+
+    private int ascii(int index) throws IOException {
+        final char c = value.charAt(index);
+        if (c > 0x7f) {
+            throw new IOException(String.format("Illegal non-ASCII character U+%04X at index %d", (int) c, index));
+        }
+        return c;
+    }
+}
@@ -1,36 +1,80 @@
 package sh.buildit.credhub;
 
 import io.pivotal.cfenv.core.CfCredentials;
+import io.pivotal.cfenv.core.CfEnvSingleton;
 import io.pivotal.cfenv.core.CfService;
 import io.pivotal.cfenv.spring.boot.CfEnvProcessor;
 import io.pivotal.cfenv.spring.boot.CfEnvProcessorProperties;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.Base64;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class CredHubKafkaEnvProcessor implements CfEnvProcessor {
     static final String CREDHUB_ENV_VAR = "CREDHUB_NAME";
+    static final String CREDHUB_SERVICE_TAG_ENV_VAR = "CREDHUB_SERVICE_TAG";
+    static final String CREDHUB_SERVICE_LABEL_ENV_VAR = "CREDHUB_SERVICE_LABEL";
     static final String CREDHUB_KEYSTORE_ENV_VAR = "CREDHUB_KEYSTORE";
     static final String CREDHUB_TRUSTSTORE_ENV_VAR = "CREDHUB_TRUSTSTORE";
+    static final String CREDHUB_TRUSTSTORE_PRUNE_TO_ENV_VAR = "CREDHUB_TRUSTSTORE_PRUNE_TO";
+    static final String CREDHUB_TRUSTSTORE_INCLUDE_JVM_ENV_VAR = "CREDHUB_TRUSTSTORE_INCLUDE_JVM";
+    static final String CREDHUB_STORE_MODE_ENV_VAR = "CREDHUB_STORE_MODE";
+    static final String CREDHUB_STORE_ASYNC_ENV_VAR = "CREDHUB_STORE_ASYNC";
+    static final String CREDHUB_STORE_LAZY_ENV_VAR = "CREDHUB_STORE_LAZY";
+    static final String CREDHUB_STORE_VALIDATE_ENV_VAR = "CREDHUB_STORE_VALIDATE";
+    static final String CREDHUB_STORE_FORMAT_ENV_VAR = "CREDHUB_STORE_FORMAT";
+    static final String CREDHUB_STORE_PBE_ITERATIONS_ENV_VAR = "CREDHUB_STORE_PBE_ITERATIONS";
+    static final String CREDHUB_STORE_CACHE_DIR_ENV_VAR = "CREDHUB_STORE_CACHE_DIR";
+    static final String CREDHUB_STORE_CACHE_MAX_AGE_ENV_VAR = "CREDHUB_STORE_CACHE_MAX_AGE";
+    static final String CREDHUB_STORE_CACHE_MAX_ENTRIES_ENV_VAR = "CREDHUB_STORE_CACHE_MAX_ENTRIES";
+    static final String CREDHUB_SSL_SESSION_CACHE_SIZE_ENV_VAR = "CREDHUB_SSL_SESSION_CACHE_SIZE";
+    static final String CREDHUB_SSL_SESSION_TIMEOUT_ENV_VAR = "CREDHUB_SSL_SESSION_TIMEOUT";
+    static final String CREDHUB_SSL_SESSION_TICKETS_ENV_VAR = "CREDHUB_SSL_SESSION_TICKETS";
+    static final String CREDHUB_ROTATION_VCAP_FILE_ENV_VAR = "CREDHUB_ROTATION_VCAP_FILE";
+    static final String CREDHUB_ROTATION_INTERVAL_ENV_VAR = "CREDHUB_ROTATION_INTERVAL";
+    static final String CREDHUB_ROTATION_REFRESH_AHEAD_ENV_VAR = "CREDHUB_ROTATION_REFRESH_AHEAD";
+    static final String CREDHUB_CLUSTERS_ENV_VAR = "CREDHUB_CLUSTERS";
+    static final String CREDHUB_TARGETS_ENV_VAR = "CREDHUB_TARGETS";
 
-    static final String SSL_PROTOCOL_PROPERTY = "spring.kafka.ssl.protocol";
-    static final String KAFKA_PROPERTIES_PROPERTY = "spring.kafka.properties";
+    static final String KAFKA_PREFIX = "spring.kafka";
+    static final String SSL_PROTOCOL_SUFFIX = ".ssl.protocol";
+    static final String KAFKA_PROPERTIES_SUFFIX = ".properties";
+    static final String TRUST_STORE_LOCATION_SUFFIX = ".ssl.trust-store-location";
+    static final String TRUST_STORE_PASSWORD_SUFFIX = ".ssl.trust-store-password";
+    static final String TRUST_STORE_TYPE_SUFFIX = ".ssl.trust-store-type";
+    static final String KEY_STORE_LOCATION_SUFFIX = ".ssl.key-store-location";
+    static final String KEY_STORE_PASSWORD_SUFFIX = ".ssl.key-store-password";
+    static final String KEY_STORE_TYPE_SUFFIX = ".ssl.key-store-type";
+
+    static final String SSL_PROTOCOL_PROPERTY = KAFKA_PREFIX + SSL_PROTOCOL_SUFFIX;
+    static final String KAFKA_PROPERTIES_PROPERTY = KAFKA_PREFIX + KAFKA_PROPERTIES_SUFFIX;
     static final String ENDPOINT_ALGORITHM_PROPERTY = "ssl.endpoint.identification.algorithm";
     static final String SECURITY_PROTOCOL_PROPERTY = "security.protocol";
-    static final String TRUST_STORE_LOCATION_PROPERTY = "spring.kafka.ssl.trust-store-location";
-    static final String TRUST_STORE_PASSWORD_PROPERTY = "spring.kafka.ssl.trust-store-password";
-    static final String TRUST_STORE_TYPE_PROPERTY = "spring.kafka.ssl.trust-store-type";
-    static final String KEY_STORE_LOCATION_PROPERTY = "spring.kafka.ssl.key-store-location";
-    static final String KEY_STORE_PASSWORD_PROPERTY = "spring.kafka.ssl.key-store-password";
-    static final String KEY_STORE_TYPE_PROPERTY = "spring.kafka.ssl.key-store-type";
+    static final String TRUSTSTORE_CERTIFICATES_PROPERTY = "ssl.truststore.certificates";
+    static final String KEYSTORE_CERTIFICATE_CHAIN_PROPERTY = "ssl.keystore.certificate.chain";
+    static final String KEYSTORE_KEY_PROPERTY = "ssl.keystore.key";
+    static final String ENGINE_FACTORY_CLASS_PROPERTY = "ssl.engine.factory.class";
+    static final String TRUST_STORE_LOCATION_PROPERTY = KAFKA_PREFIX + TRUST_STORE_LOCATION_SUFFIX;
+    static final String TRUST_STORE_PASSWORD_PROPERTY = KAFKA_PREFIX + TRUST_STORE_PASSWORD_SUFFIX;
+    static final String TRUST_STORE_TYPE_PROPERTY = KAFKA_PREFIX + TRUST_STORE_TYPE_SUFFIX;
+    static final String KEY_STORE_LOCATION_PROPERTY = KAFKA_PREFIX + KEY_STORE_LOCATION_SUFFIX;
+    static final String KEY_STORE_PASSWORD_PROPERTY = KAFKA_PREFIX + KEY_STORE_PASSWORD_SUFFIX;
+    static final String KEY_STORE_TYPE_PROPERTY = KAFKA_PREFIX + KEY_STORE_TYPE_SUFFIX;
 
     static final String TRUST_STORE_LOCATION = "trust-store-location";
     static final String TRUST_STORE_PASSWORD = "trust-store-password";
@@ -39,45 +83,188 @@ public class CredHubKafkaEnvProcessor implements CfEnvProcessor {
     static final String KEY_STORE_PASSWORD = "key-store-password";
     static final String KEY_STORE_TYPE = "key-store-type";
 
+    static final String PEM_STORE_TYPE = "PEM";
+
+    static final Duration DEFAULT_STORE_CACHE_MAX_AGE = Duration.ofDays(7);
+    static final int DEFAULT_STORE_CACHE_MAX_ENTRIES = 16;
+    static final int DEFAULT_STORE_PBE_ITERATIONS = 1;
+    static final Duration DEFAULT_ROTATION_INTERVAL = Duration.ofMinutes(5);
+    static final Duration DEFAULT_ROTATION_REFRESH_AHEAD = Duration.ofDays(1);
+
+    private final Function<String, CfCredentials> serviceCredentials;
+    private volatile ServiceSelector serviceSelector;
+
+    public CredHubKafkaEnvProcessor() {
+        this(name -> CfEnvSingleton.getCfEnvInstance().findServiceByName(name).getCredentials());
+    }
+
+    CredHubKafkaEnvProcessor(Function<String, CfCredentials> serviceCredentials) {
+        this.serviceCredentials = serviceCredentials;
+    }
+
     @Override
     public boolean accept(CfService service) {
-        final String credhub = readEnv(CREDHUB_ENV_VAR);
-        return service.existsByTagIgnoreCase("credhub") && service.getName().equalsIgnoreCase(credhub);
+        return serviceSelector().accept(service);
     }
 
     @Override
     public void process(CfCredentials cfCredentials, Map<String, Object> properties) {
-        final Map<String, Object> kafkaProperties = new HashMap<>();
-        kafkaProperties.put(ENDPOINT_ALGORITHM_PROPERTY, null);
-        kafkaProperties.put(SECURITY_PROTOCOL_PROPERTY, "ssl");
-        properties.put(SSL_PROTOCOL_PROPERTY, "ssl");
-        properties.put(KAFKA_PROPERTIES_PROPERTY, kafkaProperties);
-
-        final String trustStoreLocation = getStoreLocationKey(CREDHUB_TRUSTSTORE_ENV_VAR, TRUST_STORE_LOCATION);
-        final String trustStorePassword = getStorePasswordKey(CREDHUB_TRUSTSTORE_ENV_VAR, TRUST_STORE_PASSWORD);
-        final String trustStoreType = getStoreTypeKey(CREDHUB_TRUSTSTORE_ENV_VAR, TRUST_STORE_TYPE);
-
-        properties.put(TRUST_STORE_LOCATION_PROPERTY, extractKeyStore(cfCredentials, trustStoreLocation));
-        properties.put(TRUST_STORE_PASSWORD_PROPERTY, cfCredentials.getMap().get(trustStorePassword).toString());
-        properties.put(TRUST_STORE_TYPE_PROPERTY, cfCredentials.getMap().get(trustStoreType).toString());
+        final StoreMode storeMode = readOptionalEnv(CREDHUB_STORE_MODE_ENV_VAR)
+            .map(StoreMode::of)
+            .orElse(StoreMode.FILE);
+        final List<StoreTarget> targets = readTargets();
+        final Map<String, String> otherClusters = readClusters();
+        final StoreCache storeCache = readStoreCache().orElse(null);
+        if (storeCache != null) {
+            int storeFiles = storeFiles(targets, storeMode);
+            for (String prefix : otherClusters.values()) {
+                storeFiles += storeFiles(Collections.singletonList(new KafkaTarget(prefix)), storeMode);
+            }
+            if (storeCache.maxEntries() < storeFiles) {
+                throw new IllegalArgumentException("Environment variable " + CREDHUB_STORE_CACHE_MAX_ENTRIES_ENV_VAR
+                    + " is " + storeCache.maxEntries() + ", but one pass writes up to " + storeFiles + " stores");
+            }
+        }
+        final StoreMaterializer materializer = new StoreMaterializer(
+            storeCache,
+            readStoreConversion().orElse(null),
+            readStoreTiming(),
+            readOptionalEnv(CREDHUB_STORE_VALIDATE_ENV_VAR).map(Boolean::parseBoolean).orElse(false),
+            StoreExecutor.shared());
 
-        final String keyStoreLocation = getStoreLocationKey(CREDHUB_KEYSTORE_ENV_VAR, KEY_STORE_LOCATION);
-        final String keyStorePassword = getStorePasswordKey(CREDHUB_KEYSTORE_ENV_VAR, KEY_STORE_PASSWORD);
-        final String keyStoreType = getStoreTypeKey(CREDHUB_KEYSTORE_ENV_VAR, KEY_STORE_TYPE);
+        final StoreKeys trustStoreKeys = new StoreKeys(
+            getStoreLocationKey(CREDHUB_TRUSTSTORE_ENV_VAR, TRUST_STORE_LOCATION),
+            getStorePasswordKey(CREDHUB_TRUSTSTORE_ENV_VAR, TRUST_STORE_PASSWORD),
+            getStoreTypeKey(CREDHUB_TRUSTSTORE_ENV_VAR, TRUST_STORE_TYPE));
+        final StoreKeys keyStoreKeys = new StoreKeys(
+            getStoreLocationKey(CREDHUB_KEYSTORE_ENV_VAR, KEY_STORE_LOCATION),
+            getStorePasswordKey(CREDHUB_KEYSTORE_ENV_VAR, KEY_STORE_PASSWORD),
+            getStoreTypeKey(CREDHUB_KEYSTORE_ENV_VAR, KEY_STORE_TYPE));
 
-        properties.put(KEY_STORE_LOCATION_PROPERTY, extractKeyStore(cfCredentials, keyStoreLocation));
-        properties.put(KEY_STORE_PASSWORD_PROPERTY, cfCredentials.getMap().get(keyStorePassword).toString());
-        properties.put(KEY_STORE_TYPE_PROPERTY, cfCredentials.getMap().get(keyStoreType).toString());
+        // Start every cluster before waiting on any, so all stores are materialized in one parallel pass
+        final List<CompletableFuture<Map<String, Object>>> clusters = new ArrayList<>();
+        clusters.add(processCluster(serviceSelector().serviceName(), targets, cfCredentials,
+            storeMode, materializer, trustStoreKeys, readTrustStorePruner().orElse(null), keyStoreKeys));
+        // Other clusters have other brokers, so their trust stores are never pruned to these
+        otherClusters.forEach((serviceName, prefix) -> clusters.add(processCluster(serviceName,
+            Collections.singletonList(new KafkaTarget(prefix)), serviceCredentials.apply(serviceName),
+            storeMode, materializer, trustStoreKeys, null, keyStoreKeys)));
+        for (CompletableFuture<Map<String, Object>> cluster : clusters) {
+            properties.putAll(StoreMaterializer.join(cluster));
+        }
     }
 
     @Override
     public CfEnvProcessorProperties getProperties() {
+        final Set<String> prefixes = new LinkedHashSet<>();
+        for (StoreTarget target : readTargets()) {
+            if (target.prefix() != null) {
+                prefixes.add(target.prefix());
+            }
+        }
+        prefixes.addAll(readClusters().values());
         return CfEnvProcessorProperties.builder()
-                .propertyPrefixes("spring.kafka")
+                .propertyPrefixes(String.join(", ", prefixes))
                 .serviceName("Kafka using CredHub")
                 .build();
     }
 
+    /**
+     * Materializes the stores of one service in the forms its targets need, each only once, and lets every target
+     * publish its properties from them.
+     */
+    private CompletableFuture<Map<String, Object>> processCluster(String serviceName, List<StoreTarget> targets,
+                                                                  CfCredentials cfCredentials, StoreMode storeMode,
+                                                                  StoreMaterializer materializer,
+                                                                  StoreKeys trustStoreKeys, TrustStorePruner pruner,
+                                                                  StoreKeys keyStoreKeys) {
+        final Set<StoreTarget.Output> outputs = EnumSet.noneOf(StoreTarget.Output.class);
+        for (StoreTarget target : targets) {
+            outputs.addAll(target.outputs(storeMode));
+        }
+
+        CompletableFuture<Void> material = CompletableFuture.completedFuture(null);
+        if (outputs.contains(StoreTarget.Output.MATERIAL)) {
+            readOptionalEnv(CREDHUB_SSL_SESSION_TICKETS_ENV_VAR).map(Boolean::parseBoolean).ifPresent(SessionCache::sessionTickets);
+            final SessionCache sessionCache = new SessionCache(
+                readOptionalEnv(CREDHUB_SSL_SESSION_CACHE_SIZE_ENV_VAR).map(Integer::parseInt).orElse(null),
+                readOptionalEnv(CREDHUB_SSL_SESSION_TIMEOUT_ENV_VAR).map(Duration::parse).orElse(null));
+            final boolean includeJvmTrust = readOptionalEnv(CREDHUB_TRUSTSTORE_INCLUDE_JVM_ENV_VAR).map(Boolean::parseBoolean).orElse(false);
+            final Consumer<CfCredentials> registrar = credentials -> SslMaterial.register(serviceName,
+                KeyStores.digest(credentials.getMap().get(keyStoreKeys.location()), credentials.getMap().get(trustStoreKeys.location()),
+                    includeJvmTrust, sessionCache, pruner),
+                () -> SslMaterial.of(
+                    StoreMaterializer.parse(StoreMetrics.recorder(serviceName, keyStoreKeys.location()), credentials, keyStoreKeys),
+                    keyStoreKeys.password(credentials),
+                    StoreMaterializer.parse(StoreMetrics.recorder(serviceName, trustStoreKeys.location()), credentials, trustStoreKeys, pruner),
+                    includeJvmTrust,
+                    sessionCache));
+            material = materializer.run(() -> {
+                registrar.accept(cfCredentials);
+                readOptionalEnv(CREDHUB_ROTATION_VCAP_FILE_ENV_VAR).ifPresent(file -> StoreRotator.start(
+                    serviceName,
+                    new VcapServicesFileSource(Paths.get(file), serviceName),
+                    registrar,
+                    readOptionalEnv(CREDHUB_ROTATION_INTERVAL_ENV_VAR).map(Duration::parse).orElse(DEFAULT_ROTATION_INTERVAL),
+                    readOptionalEnv(CREDHUB_ROTATION_REFRESH_AHEAD_ENV_VAR).map(Duration::parse).orElse(DEFAULT_ROTATION_REFRESH_AHEAD)));
+            });
+        }
+
+        CompletableFuture<String[]> pem = CompletableFuture.completedFuture(null);
+        if (outputs.contains(StoreTarget.Output.PEM)) {
+            final CompletableFuture<KeyStore> trustStore = materializer.load(serviceName, cfCredentials, trustStoreKeys, pruner);
+            final CompletableFuture<KeyStore> keyStore = materializer.load(serviceName, cfCredentials, keyStoreKeys);
+            pem = trustStore.thenCombine(keyStore, (trusted, key) -> new String[]{
+                KeyStores.toCertificatesPem(trusted),
+                KeyStores.toCertificateChainPem(key),
+                KeyStores.toPrivateKeyPem(key, keyStoreKeys.password(cfCredentials))});
+        }
+
+        CompletableFuture<MaterializedStores.StoreFile[]> files = CompletableFuture.completedFuture(null);
+        if (outputs.contains(StoreTarget.Output.FILES)) {
+            final CompletableFuture<String> trustStoreLocation = materializer.location(serviceName, cfCredentials, trustStoreKeys, pruner);
+            final CompletableFuture<String> keyStoreLocation = materializer.location(serviceName, cfCredentials, keyStoreKeys);
+            files = trustStoreLocation.thenCombine(keyStoreLocation, (trusted, key) -> new MaterializedStores.StoreFile[]{
+                new MaterializedStores.StoreFile(trusted,
+                    materializer.password(cfCredentials, trustStoreKeys).orElse(null),
+                    materializer.type(cfCredentials, trustStoreKeys)),
+                new MaterializedStores.StoreFile(key,
+                    materializer.password(cfCredentials, keyStoreKeys).orElse(null),
+                    materializer.type(cfCredentials, keyStoreKeys))});
+        }
+
+        final CompletableFuture<String[]> pemOutput = pem;
+        final CompletableFuture<MaterializedStores.StoreFile[]> fileOutput = files;
+        return CompletableFuture.allOf(material, pem, files).thenApply(ignored -> {
+            final String[] pemStores = pemOutput.join();
+            final MaterializedStores.StoreFile[] fileStores = fileOutput.join();
+            final MaterializedStores stores = new MaterializedStores(serviceName, storeMode,
+                fileStores == null ? null : fileStores[0],
+                fileStores == null ? null : fileStores[1],
+                pemStores == null ? null : pemStores[0],
+                pemStores == null ? null : pemStores[1],
+                pemStores == null ? null : pemStores[2]);
+            final Map<String, Object> properties = new HashMap<>();
+            for (StoreTarget target : targets) {
+                target.apply(stores, properties);
+            }
+            return properties;
+        });
+    }
+
+    /**
+     * The number of store files a cluster with {@code targets} writes: its trust and key store, if any target
+     * reads files.
+     */
+    private static int storeFiles(List<StoreTarget> targets, StoreMode storeMode) {
+        for (StoreTarget target : targets) {
+            if (target.outputs(storeMode).contains(StoreTarget.Output.FILES)) {
+                return 2;
+            }
+        }
+        return 0;
+    }
+
     private String getStoreLocationKey(String envVar, String defaultKey) {
         return getKey(envVar, defaultKey, "location");
     }
@@ -96,36 +283,117 @@ public class CredHubKafkaEnvProcessor implements CfEnvProcessor {
             .orElseGet(() -> defaultKey);
     }
 
-    private static String readEnv(String var) {
-        final String value = Optional.of(System.getenv(var))
-            .orElseThrow(() -> new IllegalArgumentException("Environment variable " + var + " is required"));
-        if (value.trim().isEmpty()) {
-            throw new IllegalArgumentException("Environment variable " + var + " requires a value");
+    /**
+     * Reads the service selection once per processor, as cfenv asks it to accept every bound service in turn.
+     */
+    private ServiceSelector serviceSelector() {
+        ServiceSelector selector = serviceSelector;
+        if (selector == null) {
+            selector = ServiceSelector.fromEnvironment();
+            serviceSelector = selector;
         }
-        return value;
+        return selector;
     }
 
     private static Optional<String> readOptionalEnv(String var) {
         return Optional.ofNullable(System.getenv(var));
     }
 
-    private static String extractKeyStore(CfCredentials cfCredentials, String key) {
-        final Map<String, Object> content = cfCredentials.getMap();
-        final byte[] decoded;
-        try {
-            decoded = Base64.getDecoder().decode(content.get(key).toString());
-        } catch (Exception e) {
-            throw new RuntimeException("Failure grabbing value " + key + " from CredHub");
+    /**
+     * Reads the targets of {@code CREDHUB_NAME} as comma separated {@code target[=argument]} entries, by default
+     * Kafka under {@code spring.kafka}.
+     */
+    private static List<StoreTarget> readTargets() {
+        final List<StoreTarget> targets = new ArrayList<>();
+        for (String entry : readOptionalEnv(CREDHUB_TARGETS_ENV_VAR).orElse(KafkaTarget.NAME).split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            final String[] parts = entry.split("=", 2);
+            final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            final Optional<String> argument = parts.length == 2 && !parts[1].trim().isEmpty()
+                ? Optional.of(parts[1].trim())
+                : Optional.empty();
+            switch (name) {
+                case KafkaTarget.NAME:
+                    targets.add(new KafkaTarget(argument.orElse(KAFKA_PREFIX)));
+                    break;
+                case SslBundleTarget.NAME:
+                    targets.add(new SslBundleTarget(argument.orElseThrow(() -> new IllegalArgumentException(
+                        "Environment variable " + CREDHUB_TARGETS_ENV_VAR + " needs a bundle name for " + entry))));
+                    break;
+                case MysqlTarget.NAME:
+                    targets.add(new MysqlTarget(argument.orElse(MysqlTarget.DEFAULT_PREFIX)));
+                    break;
+                case SslContextTarget.NAME:
+                    targets.add(new SslContextTarget());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Environment variable " + CREDHUB_TARGETS_ENV_VAR
+                        + " has unknown target " + entry + ", expected one of " + KafkaTarget.NAME + ", "
+                        + SslBundleTarget.NAME + ", " + MysqlTarget.NAME + " or " + SslContextTarget.NAME);
+            }
         }
-        try {
-            final Path tempFile = Files.createTempFile(null, ".jks");
-            try (final InputStream inputStream = new ByteArrayInputStream(decoded)) {
-                Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        return targets;
+    }
+
+    /**
+     * Reads additional clusters as comma separated {@code service=prefix} pairs, in declaration order.
+     */
+    private static Map<String, String> readClusters() {
+        final Map<String, String> clusters = new LinkedHashMap<>();
+        readOptionalEnv(CREDHUB_CLUSTERS_ENV_VAR).ifPresent(value -> {
+            for (String entry : value.split(",")) {
+                if (entry.trim().isEmpty()) {
+                    continue;
+                }
+                final String[] parts = entry.split("=", 2);
+                if (parts.length != 2 || parts[0].trim().isEmpty() || parts[1].trim().isEmpty()) {
+                    throw new IllegalArgumentException("Environment variable " + CREDHUB_CLUSTERS_ENV_VAR
+                        + " expects service=prefix pairs, got " + entry);
+                }
+                clusters.put(parts[0].trim(), parts[1].trim());
             }
-            return "file://" + tempFile.toAbsolutePath();
-        } catch (IOException e) {
-            System.err.println("Problem writing out key " + key);
-            throw new RuntimeException(e);
+        });
+        return clusters;
+    }
+
+    private static StoreMaterializer.Timing readStoreTiming() {
+        if (readOptionalEnv(CREDHUB_STORE_LAZY_ENV_VAR).map(Boolean::parseBoolean).orElse(false)) {
+            return StoreMaterializer.Timing.LAZY;
         }
+        return readOptionalEnv(CREDHUB_STORE_ASYNC_ENV_VAR).map(Boolean::parseBoolean).orElse(false)
+            ? StoreMaterializer.Timing.ASYNC
+            : StoreMaterializer.Timing.EAGER;
+    }
+
+    private static Optional<StoreCache> readStoreCache() {
+        return readOptionalEnv(CREDHUB_STORE_CACHE_DIR_ENV_VAR)
+            .map(directory -> new StoreCache(
+                Paths.get(directory),
+                readOptionalEnv(CREDHUB_STORE_CACHE_MAX_AGE_ENV_VAR).map(Duration::parse).orElse(DEFAULT_STORE_CACHE_MAX_AGE),
+                readOptionalEnv(CREDHUB_STORE_CACHE_MAX_ENTRIES_ENV_VAR).map(Integer::parseInt).orElse(DEFAULT_STORE_CACHE_MAX_ENTRIES)));
+    }
+
+    private static Optional<StoreConversion> readStoreConversion() {
+        return readOptionalEnv(CREDHUB_STORE_FORMAT_ENV_VAR)
+            .map(format -> new StoreConversion(StoreFormat.of(format),
+                readOptionalEnv(CREDHUB_STORE_PBE_ITERATIONS_ENV_VAR).map(Integer::parseInt).orElse(DEFAULT_STORE_PBE_ITERATIONS)));
+    }
+
+    /**
+     * Reads the broker certificate files of {@code CREDHUB_TRUSTSTORE_PRUNE_TO}, comma separated.
+     */
+    private static Optional<TrustStorePruner> readTrustStorePruner() {
+        return readOptionalEnv(CREDHUB_TRUSTSTORE_PRUNE_TO_ENV_VAR)
+            .map(files -> {
+                final List<Path> paths = new ArrayList<>();
+                for (String file : files.split(",")) {
+                    if (!file.trim().isEmpty()) {
+                        paths.add(Paths.get(file.trim()));
+                    }
+                }
+                return TrustStorePruner.of(paths);
+            });
     }
 }
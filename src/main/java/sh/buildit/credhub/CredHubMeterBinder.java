@@ -0,0 +1,115 @@
+package sh.buildit.credhub;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the store metrics recorded while the environment was processed, and any recorded later on, such as
+ * after a rotation.
+ * <ul>
+ *     <li>{@value #PHASE_TIMER}, a timer per {@code service}, {@code store} and {@code phase}
+ *     ({@code lookup}, {@code decode}, {@code load}, {@code prune}, {@code write} or {@code validate})</li>
+ *     <li>{@value #SIZE_GAUGE}, the decoded size of each store</li>
+ *     <li>{@value #ENTRIES_GAUGE}, the number of entries of each parsed store</li>
+ *     <li>{@value #NOT_AFTER_GAUGE}, the earliest certificate expiry of each parsed store in epoch seconds</li>
+ * </ul>
+ * Each registry stops receiving values once it is closed or garbage collected, or once this binder is closed, as
+ * Spring does when the context that declared it closes.
+ */
+public class CredHubMeterBinder implements MeterBinder, AutoCloseable {
+    static final String PHASE_TIMER = "credhub.store.phase";
+    static final String SIZE_GAUGE = "credhub.store.size";
+    static final String ENTRIES_GAUGE = "credhub.store.entries";
+    static final String NOT_AFTER_GAUGE = "credhub.store.not.after";
+
+    private final List<StoreMetrics.Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        final RegistryListener listener = new RegistryListener(registry);
+        listener.subscription = StoreMetrics.subscribe(listener);
+        subscriptions.add(listener.subscription);
+    }
+
+    @Override
+    public void close() {
+        for (StoreMetrics.Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+        subscriptions.clear();
+    }
+
+    private static Tags tags(String service, String store) {
+        return Tags.of("service", service, "store", store);
+    }
+
+    /**
+     * Registers meters in a registry it only holds weakly, and unsubscribes once that registry is gone or closed.
+     */
+    private final class RegistryListener implements StoreMetrics.Listener {
+        private final WeakReference<MeterRegistry> reference;
+        private volatile StoreMetrics.Subscription subscription;
+
+        private RegistryListener(MeterRegistry registry) {
+            this.reference = new WeakReference<>(registry);
+        }
+
+        @Override
+        public void timing(StoreMetrics.Timing timing) {
+            final MeterRegistry registry = registry();
+            if (registry != null) {
+                Timer.builder(PHASE_TIMER)
+                    .description("Time spent materializing CredHub stores")
+                    .tags(tags(timing.service, timing.store).and("phase", timing.phase.tag()))
+                    .register(registry)
+                    .record(timing.nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public void store(StoreMetrics.Store store) {
+            final MeterRegistry registry = registry();
+            if (registry == null) {
+                return;
+            }
+            final Tags tags = tags(store.service, store.store);
+            Gauge.builder(SIZE_GAUGE, store, StoreMetrics.Store::bytes)
+                .description("Decoded size of the CredHub store")
+                .baseUnit(BaseUnits.BYTES)
+                .tags(tags)
+                .register(registry);
+            Gauge.builder(ENTRIES_GAUGE, store, StoreMetrics.Store::entries)
+                .description("Entries in the CredHub store")
+                .tags(tags)
+                .register(registry);
+            Gauge.builder(NOT_AFTER_GAUGE, store, StoreMetrics.Store::notAfterEpochSeconds)
+                .description("Earliest certificate expiry in the CredHub store")
+                .baseUnit("seconds")
+                .tags(tags)
+                .register(registry);
+        }
+
+        private MeterRegistry registry() {
+            final MeterRegistry registry = reference.get();
+            if (registry != null && !registry.isClosed()) {
+                return registry;
+            }
+            // Still null while the buffered values are replayed, when the registry is certainly alive and open
+            final StoreMetrics.Subscription current = subscription;
+            if (current != null) {
+                current.close();
+                subscriptions.remove(current);
+            }
+            return null;
+        }
+    }
+}
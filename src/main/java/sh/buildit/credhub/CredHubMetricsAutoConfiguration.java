@@ -0,0 +1,21 @@
+package sh.buildit.credhub;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers {@link CredHubMeterBinder} when Micrometer is present, so Spring Boot Actuator binds it to its
+ * registries once they exist.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+public class CredHubMetricsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public CredHubMeterBinder credHubMeterBinder() {
+        return new CredHubMeterBinder();
+    }
+}
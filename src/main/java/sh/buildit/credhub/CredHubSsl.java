@@ -0,0 +1,40 @@
+package sh.buildit.credhub;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.security.KeyStore;
+
+/**
+ * Access to the stores of a CredHub service parsed by the {@code ssl-context} target or {@code shared} store mode,
+ * for clients that are configured in code. Every accessor returns the current material, so clients that look it up
+ * per connection pick up rotated credentials.
+ */
+public final class CredHubSsl {
+
+    private CredHubSsl() {
+    }
+
+    /**
+     * @throws IllegalStateException if no stores were parsed for {@code service}
+     */
+    public static SSLContext sslContext(String service) {
+        return SslMaterial.get(service).sslContext();
+    }
+
+    public static KeyManagerFactory keyManagerFactory(String service) {
+        return SslMaterial.get(service).keyManagerFactory();
+    }
+
+    public static X509ExtendedTrustManager trustManager(String service) {
+        return SslMaterial.get(service).trustManager();
+    }
+
+    public static KeyStore keyStore(String service) {
+        return SslMaterial.get(service).keyStore();
+    }
+
+    public static KeyStore trustStore(String service) {
+        return SslMaterial.get(service).trustStore();
+    }
+}
@@ -0,0 +1,114 @@
+package sh.buildit.credhub;
+
+import org.apache.kafka.common.config.SslConfigs;
+import org.apache.kafka.common.security.auth.SslEngineFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Kafka {@link SslEngineFactory} that hands out engines from the {@link SslMaterial} registered by
+ * {@link CredHubKafkaEnvProcessor}, so all clients in the JVM share one parsed {@link javax.net.ssl.SSLContext}
+ * instead of each loading the stores and building their own.
+ */
+public class CredHubSslEngineFactory implements SslEngineFactory {
+    static final String MATERIAL_CONFIG = "credhub.ssl.material";
+
+    private String materialName;
+    private String[] enabledProtocols;
+    private String[] cipherSuites;
+    private String clientAuth;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        materialName = Objects.requireNonNull((String) configs.get(MATERIAL_CONFIG), MATERIAL_CONFIG + " is required");
+        // Fail fast when the processor has not registered anything under this name
+        SslMaterial.get(materialName);
+        enabledProtocols = toArray(configs.get(SslConfigs.SSL_ENABLED_PROTOCOLS_CONFIG));
+        cipherSuites = toArray(configs.get(SslConfigs.SSL_CIPHER_SUITES_CONFIG));
+        clientAuth = (String) configs.get("ssl.client.auth");
+    }
+
+    @Override
+    public SSLEngine createClientSslEngine(String peerHost, int peerPort, String endpointIdentification) {
+        final SSLEngine sslEngine = createSslEngine(peerHost, peerPort);
+        sslEngine.setUseClientMode(true);
+        final SSLParameters sslParameters = sslEngine.getSSLParameters();
+        sslParameters.setEndpointIdentificationAlgorithm(endpointIdentification);
+        sslEngine.setSSLParameters(sslParameters);
+        return sslEngine;
+    }
+
+    @Override
+    public SSLEngine createServerSslEngine(String peerHost, int peerPort) {
+        final SSLEngine sslEngine = createSslEngine(peerHost, peerPort);
+        sslEngine.setUseClientMode(false);
+        if ("required".equalsIgnoreCase(clientAuth)) {
+            sslEngine.setNeedClientAuth(true);
+        } else if ("requested".equalsIgnoreCase(clientAuth)) {
+            sslEngine.setWantClientAuth(true);
+        }
+        return sslEngine;
+    }
+
+    @Override
+    public boolean shouldBeRebuilt(Map<String, Object> nextConfigs) {
+        return !Objects.equals(materialName, nextConfigs.get(MATERIAL_CONFIG));
+    }
+
+    @Override
+    public Set<String> reconfigurableConfigs() {
+        return Collections.singleton(MATERIAL_CONFIG);
+    }
+
+    @Override
+    public KeyStore keystore() {
+        return material().keyStore();
+    }
+
+    @Override
+    public KeyStore truststore() {
+        return material().trustStore();
+    }
+
+    @Override
+    public void close() {
+        // The material is shared by every client in the JVM, so there is nothing to release per factory
+    }
+
+    SslMaterial material() {
+        return SslMaterial.get(materialName);
+    }
+
+    private SSLEngine createSslEngine(String peerHost, int peerPort) {
+        final SSLEngine sslEngine = material().sslContext().createSSLEngine(peerHost, peerPort);
+        if (enabledProtocols != null) {
+            sslEngine.setEnabledProtocols(enabledProtocols);
+        }
+        if (cipherSuites != null) {
+            sslEngine.setEnabledCipherSuites(cipherSuites);
+        }
+        return sslEngine;
+    }
+
+    private static String[] toArray(Object value) {
+        final List<String> values;
+        if (value instanceof Collection) {
+            values = ((Collection<?>) value).stream().map(Object::toString).collect(Collectors.toList());
+        } else if (value instanceof String) {
+            values = Arrays.stream(((String) value).split(",")).map(String::trim).collect(Collectors.toList());
+        } else {
+            return null;
+        }
+        return values.isEmpty() ? null : values.toArray(new String[0]);
+    }
+}
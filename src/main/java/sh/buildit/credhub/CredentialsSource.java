@@ -0,0 +1,17 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+
+/**
+ * Supplies the current credentials of the bound CredHub service, so {@link StoreRotator} can pick up rotated
+ * stores without a restart. {@link VcapServicesFileSource} is the only source in production; tests pass their own.
+ */
+@FunctionalInterface
+interface CredentialsSource {
+
+    /**
+     * @return the latest credentials of the CredHub service
+     * @throws RuntimeException if the credentials cannot be read
+     */
+    CfCredentials read();
+}
@@ -0,0 +1,27 @@
+package sh.buildit.credhub;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+/**
+ * Adds {@link DeferredStorePropertySource} once {@link CredHubKafkaEnvProcessor} has handed stores to the
+ * background, so the placeholders it published can be resolved.
+ */
+public class DeferredStoreEnvironmentPostProcessor implements EnvironmentPostProcessor, Ordered {
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!DeferredStores.names().isEmpty()
+            && !environment.getPropertySources().contains(DeferredStorePropertySource.NAME)) {
+            environment.getPropertySources().addLast(new DeferredStorePropertySource());
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        // After CfEnvironmentPostProcessor, which runs the CredHub processor
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
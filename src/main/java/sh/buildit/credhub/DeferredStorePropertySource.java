@@ -0,0 +1,29 @@
+package sh.buildit.credhub;
+
+import org.springframework.core.env.EnumerablePropertySource;
+
+/**
+ * Resolves the placeholders published for {@link DeferredStores}, blocking only when a property is actually read.
+ */
+class DeferredStorePropertySource extends EnumerablePropertySource<Object> {
+    static final String NAME = "credhubDeferredStores";
+
+    DeferredStorePropertySource() {
+        super(NAME, new Object());
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return DeferredStores.names().stream()
+            .map(name -> DeferredStores.PROPERTY_PREFIX + name)
+            .toArray(String[]::new);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        if (!name.startsWith(DeferredStores.PROPERTY_PREFIX)) {
+            return null;
+        }
+        return DeferredStores.resolve(name.substring(DeferredStores.PROPERTY_PREFIX.length()));
+    }
+}
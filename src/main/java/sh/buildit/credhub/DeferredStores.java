@@ -0,0 +1,113 @@
+package sh.buildit.credhub;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * JVM wide registry of store values that are materialized in the background or on first read. The processor
+ * publishes placeholders pointing at {@link #PROPERTY_PREFIX} names, which {@link DeferredStorePropertySource}
+ * resolves by waiting for the matching future.
+ */
+final class DeferredStores {
+    static final String PROPERTY_PREFIX = "credhub.deferred.";
+    private static final ConcurrentMap<String, Future<String>> STORES = new ConcurrentHashMap<>();
+
+    private DeferredStores() {
+    }
+
+    /**
+     * Starts {@code task} in the background unless a task is already registered under {@code name}. A task that
+     * failed is replaced, so a transient failure is retried by the next pass rather than replayed for good.
+     *
+     * @return a placeholder that resolves to the result of the task
+     */
+    static String submit(String name, Callable<String> task) {
+        STORES.compute(name, (key, existing) -> existing == null || failed(existing)
+            ? StoreExecutor.shared().submit(task)
+            : existing);
+        return "${" + PROPERTY_PREFIX + name + "}";
+    }
+
+    /**
+     * Registers {@code task} to run on the thread that first resolves {@code name}, unless a task is already
+     * registered under it. As with {@link #submit}, a task that failed is replaced.
+     *
+     * @return a placeholder that resolves to the result of the task
+     */
+    static String defer(String name, Callable<String> task) {
+        STORES.compute(name, (key, existing) -> existing == null || failed(existing) ? new Deferred(task) : existing);
+        return "${" + PROPERTY_PREFIX + name + "}";
+    }
+
+    /**
+     * Waits for the store registered under {@code name}, running it first if it was deferred. A deferred store
+     * that failed runs again, so a transient failure on one read does not fail every later one.
+     */
+    static String resolve(String name) {
+        Future<String> future = STORES.get(name);
+        if (future == null) {
+            return null;
+        }
+        if (future instanceof Deferred && failed(future)) {
+            // A FutureTask never runs again once it failed, so retry with a fresh one
+            future = STORES.computeIfPresent(name, (key, existing) -> existing instanceof Deferred && failed(existing)
+                ? new Deferred(((Deferred) existing).task)
+                : existing);
+        }
+        if (future instanceof Deferred) {
+            // Only the first caller runs the task, concurrent callers wait for it below
+            ((Deferred) future).run();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for CredHub store " + name, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failure materializing CredHub store " + name, e.getCause());
+        }
+    }
+
+    static Set<String> names() {
+        return Collections.unmodifiableSet(STORES.keySet());
+    }
+
+    /**
+     * Whether the store registered under {@code name} has been materialized, successfully or not.
+     */
+    static boolean isDone(String name) {
+        final Future<String> future = STORES.get(name);
+        return future != null && future.isDone();
+    }
+
+    private static boolean failed(Future<String> future) {
+        if (!future.isDone()) {
+            return false;
+        }
+        try {
+            future.get();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | CancellationException e) {
+            return true;
+        }
+    }
+
+    private static final class Deferred extends FutureTask<String> {
+        private final Callable<String> task;
+
+        private Deferred(Callable<String> task) {
+            super(task);
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package sh.buildit.credhub;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.security.auth.x500.X500Principal;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Trust manager over a large, de-duplicated set of anchors. Each chain is checked by the JDK's PKIX trust manager,
+ * but only against the anchors that can issue or are a certificate in it, looked up by subject, key identifier and
+ * fingerprint, so validation cost does not grow with the number of anchors.
+ */
+final class IndexedTrustManager extends X509ExtendedTrustManager {
+    private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+    private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+    private static final int MAX_DELEGATES = 256;
+
+    private final Map<X500Principal, List<X509Certificate>> bySubject = new LinkedHashMap<>();
+    private final Map<ByteBuffer, List<X509Certificate>> byKeyIdentifier = new LinkedHashMap<>();
+    private final Map<ByteBuffer, X509Certificate> byFingerprint = new LinkedHashMap<>();
+    private final Map<X509Certificate, ByteBuffer> fingerprints = new IdentityHashMap<>();
+    private final X509Certificate[] acceptedIssuers;
+    private final ConcurrentMap<List<ByteBuffer>, X509ExtendedTrustManager> delegates = new ConcurrentHashMap<>();
+
+    /**
+     * @param anchors trusted certificates; certificates with the same fingerprint are only kept once
+     */
+    IndexedTrustManager(Collection<X509Certificate> anchors) {
+        final Map<ByteBuffer, X509Certificate> unique = new LinkedHashMap<>();
+        for (X509Certificate anchor : anchors) {
+            unique.putIfAbsent(fingerprint(anchor), anchor);
+        }
+        byFingerprint.putAll(unique);
+        unique.forEach((fingerprint, anchor) -> fingerprints.put(anchor, fingerprint));
+        for (X509Certificate anchor : unique.values()) {
+            bySubject.computeIfAbsent(anchor.getSubjectX500Principal(), key -> new ArrayList<>()).add(anchor);
+            final byte[] keyIdentifier = subjectKeyIdentifier(anchor);
+            if (keyIdentifier != null) {
+                byKeyIdentifier.computeIfAbsent(ByteBuffer.wrap(keyIdentifier), key -> new ArrayList<>()).add(anchor);
+            }
+        }
+        acceptedIssuers = unique.values().toArray(new X509Certificate[0]);
+    }
+
+    /**
+     * The certificates in {@code trustStore}, optionally merged with the anchors the JVM trusts by default.
+     */
+    static IndexedTrustManager of(KeyStore trustStore, boolean includeJvmTrust) {
+        final List<X509Certificate> anchors = new ArrayList<>();
+        try {
+            for (String alias : Collections.list(trustStore.aliases())) {
+                final Certificate certificate = trustStore.getCertificate(alias);
+                if (certificate instanceof X509Certificate) {
+                    anchors.add((X509Certificate) certificate);
+                }
+            }
+            if (includeJvmTrust) {
+                final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                trustManagerFactory.init((KeyStore) null);
+                for (TrustManager trustManager : trustManagerFactory.getTrustManagers()) {
+                    if (trustManager instanceof X509ExtendedTrustManager) {
+                        anchors.addAll(Arrays.asList(((X509ExtendedTrustManager) trustManager).getAcceptedIssuers()));
+                    }
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to read trust anchors", e);
+        }
+        return new IndexedTrustManager(anchors);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate(chain).checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        delegate(chain).checkClientTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        delegate(chain).checkClientTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate(chain).checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        delegate(chain).checkServerTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        delegate(chain).checkServerTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return acceptedIssuers.clone();
+    }
+
+    /**
+     * The anchors that may issue, or are, a certificate in {@code chain}: a superset of the anchors any PKIX path
+     * for it can end in. A trusted entry that is itself in the chain, such as a pinned broker certificate, is an
+     * anchor as it is for the JDK's trust manager, whoever issued it.
+     */
+    List<X509Certificate> anchorsFor(X509Certificate[] chain) {
+        final Map<ByteBuffer, X509Certificate> anchors = new LinkedHashMap<>();
+        for (X509Certificate certificate : chain) {
+            final X509Certificate trusted = trusted(certificate);
+            if (trusted != null) {
+                anchors.putIfAbsent(fingerprints.get(trusted), trusted);
+            }
+            addAll(anchors, bySubject.get(certificate.getIssuerX500Principal()));
+            final byte[] authorityKeyIdentifier = authorityKeyIdentifier(certificate);
+            if (authorityKeyIdentifier != null) {
+                addAll(anchors, byKeyIdentifier.get(ByteBuffer.wrap(authorityKeyIdentifier)));
+            }
+        }
+        return new ArrayList<>(anchors.values());
+    }
+
+    /**
+     * The trusted certificate with the fingerprint of {@code certificate}, or {@code null} if it is not trusted itself.
+     */
+    X509Certificate trusted(X509Certificate certificate) {
+        return byFingerprint.get(fingerprint(certificate));
+    }
+
+    private X509ExtendedTrustManager delegate(X509Certificate[] chain) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            throw new IllegalArgumentException("Empty certificate chain");
+        }
+        final List<X509Certificate> anchors = anchorsFor(chain);
+        if (anchors.isEmpty()) {
+            throw new CertificateException("No trust anchor for " + chain[0].getSubjectX500Principal()
+                + " issued by " + chain[chain.length - 1].getIssuerX500Principal());
+        }
+        final List<ByteBuffer> key = new ArrayList<>();
+        for (X509Certificate anchor : anchors) {
+            key.add(fingerprints.get(anchor));
+        }
+        X509ExtendedTrustManager delegate = delegates.get(key);
+        if (delegate == null) {
+            if (delegates.size() >= MAX_DELEGATES) {
+                delegates.clear();
+            }
+            delegate = delegates.computeIfAbsent(key, ignored -> pkix(anchors));
+        }
+        return delegate;
+    }
+
+    private static X509ExtendedTrustManager pkix(List<X509Certificate> anchors) {
+        try {
+            final KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(null, null);
+            for (int i = 0; i < anchors.size(); i++) {
+                keyStore.setCertificateEntry("anchor-" + i, anchors.get(i));
+            }
+            final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(keyStore);
+            for (TrustManager trustManager : trustManagerFactory.getTrustManagers()) {
+                if (trustManager instanceof X509ExtendedTrustManager) {
+                    return (X509ExtendedTrustManager) trustManager;
+                }
+            }
+            throw new IllegalStateException("No X509ExtendedTrustManager from " + trustManagerFactory.getAlgorithm());
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to build trust manager", e);
+        }
+    }
+
+    private void addAll(Map<ByteBuffer, X509Certificate> anchors, List<X509Certificate> candidates) {
+        if (candidates != null) {
+            for (X509Certificate candidate : candidates) {
+                anchors.putIfAbsent(fingerprints.get(candidate), candidate);
+            }
+        }
+    }
+
+    static ByteBuffer fingerprint(X509Certificate certificate) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to fingerprint " + certificate.getSubjectX500Principal(), e);
+        }
+    }
+
+    /**
+     * The key identifier of {@code SubjectKeyIdentifier ::= KeyIdentifier}, wrapped in the extension's OCTET STRING.
+     */
+    private static byte[] subjectKeyIdentifier(X509Certificate certificate) {
+        final byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER);
+        if (extension == null) {
+            return null;
+        }
+        final byte[] value = contents(extension, 0x04);
+        return value == null ? null : contents(value, 0x04);
+    }
+
+    /**
+     * The {@code [0] keyIdentifier} of {@code AuthorityKeyIdentifier ::= SEQUENCE}, if present.
+     */
+    private static byte[] authorityKeyIdentifier(X509Certificate certificate) {
+        final byte[] extension = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER);
+        if (extension == null) {
+            return null;
+        }
+        final byte[] value = contents(extension, 0x04);
+        final byte[] sequence = value == null ? null : contents(value, 0x30);
+        return sequence == null ? null : contents(sequence, 0x80);
+    }
+
+    /**
+     * The contents of the DER element at the start of {@code der}, or {@code null} if it is not tagged {@code tag}
+     * or malformed.
+     */
+    private static byte[] contents(byte[] der, int tag) {
+        if (der.length < 2 || (der[0] & 0xff) != tag) {
+            return null;
+        }
+        int length = der[1] & 0xff;
+        int offset = 2;
+        if (length > 0x80) {
+            final int lengthBytes = length & 0x7f;
+            if (lengthBytes > 3 || der.length < offset + lengthBytes) {
+                return null;
+            }
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (der[offset++] & 0xff);
+            }
+        } else if (length == 0x80) {
+            return null;
+        }
+        if (der.length < offset + length) {
+            return null;
+        }
+        return Arrays.copyOfRange(der, offset, offset + length);
+    }
+}
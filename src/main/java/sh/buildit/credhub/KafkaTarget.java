@@ -0,0 +1,87 @@
+package sh.buildit.credhub;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.ENDPOINT_ALGORITHM_PROPERTY;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.ENGINE_FACTORY_CLASS_PROPERTY;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.KAFKA_PROPERTIES_SUFFIX;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.KEYSTORE_CERTIFICATE_CHAIN_PROPERTY;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.KEYSTORE_KEY_PROPERTY;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_SUFFIX;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.KEY_STORE_PASSWORD_SUFFIX;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.KEY_STORE_TYPE_SUFFIX;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.PEM_STORE_TYPE;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.SECURITY_PROTOCOL_PROPERTY;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.SSL_PROTOCOL_SUFFIX;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.TRUSTSTORE_CERTIFICATES_PROPERTY;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION_SUFFIX;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.TRUST_STORE_PASSWORD_SUFFIX;
+import static sh.buildit.credhub.CredHubKafkaEnvProcessor.TRUST_STORE_TYPE_SUFFIX;
+
+/**
+ * Spring Kafka properties under a {@code KafkaProperties} prefix, {@code spring.kafka} by default.
+ */
+final class KafkaTarget implements StoreTarget {
+    static final String NAME = "kafka";
+
+    private final String prefix;
+
+    KafkaTarget(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Set<Output> outputs(StoreMode storeMode) {
+        switch (storeMode) {
+            case SHARED:
+                return EnumSet.of(Output.MATERIAL);
+            case PEM:
+                return EnumSet.of(Output.PEM);
+            default:
+                return EnumSet.of(Output.FILES);
+        }
+    }
+
+    @Override
+    public String prefix() {
+        return prefix;
+    }
+
+    @Override
+    public void apply(MaterializedStores stores, Map<String, Object> properties) {
+        final Map<String, Object> kafkaProperties = new HashMap<>();
+        kafkaProperties.put(ENDPOINT_ALGORITHM_PROPERTY, null);
+        kafkaProperties.put(SECURITY_PROTOCOL_PROPERTY, "ssl");
+        properties.put(prefix + SSL_PROTOCOL_SUFFIX, "ssl");
+        properties.put(prefix + KAFKA_PROPERTIES_SUFFIX, kafkaProperties);
+
+        if (stores.storeMode() == StoreMode.SHARED) {
+            kafkaProperties.put(ENGINE_FACTORY_CLASS_PROPERTY, CredHubSslEngineFactory.class.getName());
+            kafkaProperties.put(CredHubSslEngineFactory.MATERIAL_CONFIG, stores.service());
+        } else if (stores.storeMode() == StoreMode.PEM) {
+            // Kafka rejects store passwords for PEM stores, so only the type is published
+            properties.put(prefix + TRUST_STORE_TYPE_SUFFIX, PEM_STORE_TYPE);
+            properties.put(prefix + KEY_STORE_TYPE_SUFFIX, PEM_STORE_TYPE);
+            kafkaProperties.put(TRUSTSTORE_CERTIFICATES_PROPERTY, stores.trustStorePem());
+            kafkaProperties.put(KEYSTORE_CERTIFICATE_CHAIN_PROPERTY, stores.keyStoreCertificateChainPem());
+            kafkaProperties.put(KEYSTORE_KEY_PROPERTY, stores.keyStoreKeyPem());
+        } else {
+            putStore(properties, stores.trustStore(),
+                TRUST_STORE_LOCATION_SUFFIX, TRUST_STORE_PASSWORD_SUFFIX, TRUST_STORE_TYPE_SUFFIX);
+            putStore(properties, stores.keyStore(),
+                KEY_STORE_LOCATION_SUFFIX, KEY_STORE_PASSWORD_SUFFIX, KEY_STORE_TYPE_SUFFIX);
+        }
+    }
+
+    private void putStore(Map<String, Object> properties, MaterializedStores.StoreFile store,
+                          String locationSuffix, String passwordSuffix, String typeSuffix) {
+        properties.put(prefix + locationSuffix, store.location());
+        if (store.password() != null) {
+            properties.put(prefix + passwordSuffix, store.password());
+        }
+        properties.put(prefix + typeSuffix, store.type());
+    }
+}
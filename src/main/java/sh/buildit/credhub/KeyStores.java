@@ -0,0 +1,272 @@
+package sh.buildit.credhub;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * Helpers for loading CredHub stores in memory and rendering them as PEM.
+ */
+final class KeyStores {
+    private static final Base64.Encoder PEM_ENCODER = Base64.getMimeEncoder(64, new byte[]{'\n'});
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
+    private KeyStores() {
+    }
+
+    static KeyStore load(String encoded, String password, String type) {
+        return load(decode(encoded), password, type);
+    }
+
+    /**
+     * As {@link #load(String, String, String)}, recording the time spent decoding the Base64 text separately from
+     * the time {@link KeyStore#load} spends parsing the store and checking its integrity.
+     */
+    static KeyStore load(String encoded, String password, String type, StoreMetrics.Recorder recorder) {
+        final TimedInputStream decoded = new TimedInputStream(decode(encoded));
+        final long start = System.nanoTime();
+        try {
+            return load(decoded, password, type);
+        } finally {
+            recorder.record(StoreMetrics.Phase.DECODE, decoded.nanos);
+            recorder.record(StoreMetrics.Phase.LOAD, System.nanoTime() - start - decoded.nanos);
+        }
+    }
+
+    static KeyStore load(Path path, String password, String type) {
+        try {
+            return load(Files.newInputStream(path), password, type);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read " + type + " store " + path, e);
+        }
+    }
+
+    private static KeyStore load(InputStream stream, String password, String type) {
+        try (final InputStream inputStream = stream) {
+            final KeyStore keyStore = KeyStore.getInstance(type);
+            keyStore.load(inputStream, password.toCharArray());
+            return keyStore;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new RuntimeException("Unable to load " + type + " store", e);
+        }
+    }
+
+    /**
+     * Streams the decoded bytes of {@code encoded} without materializing them as a whole.
+     */
+    static InputStream decode(String encoded) {
+        return Base64.getDecoder().wrap(new CharSequenceInputStream(encoded));
+    }
+
+    /**
+     * Decodes {@code encoded} straight into {@code target} through a fixed buffer, so peak allocation does not
+     * depend on the size of the store.
+     *
+     * @return the number of bytes written
+     */
+    static long decodeTo(String encoded, Path target) throws IOException {
+        return decodeTo(encoded, target, null);
+    }
+
+    /**
+     * As {@link #decodeTo(String, Path)}, recording the time spent decoding and writing separately when
+     * {@code recorder} is given.
+     */
+    static long decodeTo(String encoded, Path target, StoreMetrics.Recorder recorder) throws IOException {
+        final byte[] buffer = new byte[DECODE_BUFFER_SIZE];
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long written = 0;
+        long decodeNanos = 0;
+        long writeNanos = 0;
+        try (final InputStream inputStream = decode(encoded);
+             final FileChannel channel = FileChannel.open(target,
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int read;
+            long start = System.nanoTime();
+            while ((read = inputStream.read(buffer)) != -1) {
+                final long decoded = System.nanoTime();
+                decodeNanos += decoded - start;
+                byteBuffer.clear().limit(read);
+                while (byteBuffer.hasRemaining()) {
+                    written += channel.write(byteBuffer);
+                }
+                start = System.nanoTime();
+                writeNanos += start - decoded;
+            }
+        }
+        if (recorder != null) {
+            recorder.record(StoreMetrics.Phase.DECODE, decodeNanos);
+            recorder.record(StoreMetrics.Phase.WRITE, writeNanos);
+        }
+        return written;
+    }
+
+    /**
+     * Hex encoded SHA-256 over the string form of each value, used to recognise identical store content.
+     */
+    static String digest(Object... values) {
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            for (Object value : values) {
+                messageDigest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                messageDigest.update((byte) 0);
+            }
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : messageDigest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The earliest expiry of any certificate in the store, whether trusted or part of a key entry's chain.
+     */
+    static Optional<Instant> notAfter(KeyStore keyStore) {
+        Instant notAfter = null;
+        try {
+            for (String alias : Collections.list(keyStore.aliases())) {
+                final Certificate[] chain = keyStore.isKeyEntry(alias)
+                    ? keyStore.getCertificateChain(alias)
+                    : new Certificate[]{keyStore.getCertificate(alias)};
+                if (chain == null) {
+                    continue;
+                }
+                for (Certificate certificate : chain) {
+                    if (certificate instanceof X509Certificate) {
+                        final Instant expiry = ((X509Certificate) certificate).getNotAfter().toInstant();
+                        notAfter = notAfter == null || expiry.isBefore(notAfter) ? expiry : notAfter;
+                    }
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to read store certificates", e);
+        }
+        return Optional.ofNullable(notAfter);
+    }
+
+    /**
+     * Renders every certificate in the store, suitable for {@code ssl.truststore.certificates}.
+     */
+    static String toCertificatesPem(KeyStore keyStore) {
+        final StringBuilder pem = new StringBuilder();
+        try {
+            for (String alias : Collections.list(keyStore.aliases())) {
+                final Certificate certificate = keyStore.getCertificate(alias);
+                if (certificate != null) {
+                    appendPem(pem, "CERTIFICATE", certificate.getEncoded());
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to read certificates", e);
+        }
+        return pem.toString();
+    }
+
+    /**
+     * Renders the chain of the first key entry, suitable for {@code ssl.keystore.certificate.chain}.
+     */
+    static String toCertificateChainPem(KeyStore keyStore) {
+        final StringBuilder pem = new StringBuilder();
+        try {
+            for (Certificate certificate : keyStore.getCertificateChain(keyAlias(keyStore))) {
+                appendPem(pem, "CERTIFICATE", certificate.getEncoded());
+            }
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to read certificate chain", e);
+        }
+        return pem.toString();
+    }
+
+    /**
+     * Renders the first private key as unencrypted PKCS#8, suitable for {@code ssl.keystore.key}.
+     */
+    static String toPrivateKeyPem(KeyStore keyStore, String password) {
+        final StringBuilder pem = new StringBuilder();
+        try {
+            final Key key = keyStore.getKey(keyAlias(keyStore), password.toCharArray());
+            if (!(key instanceof PrivateKey) || !"PKCS#8".equals(key.getFormat())) {
+                throw new RuntimeException("Key store does not contain a PKCS#8 private key");
+            }
+            appendPem(pem, "PRIVATE KEY", key.getEncoded());
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to read private key", e);
+        }
+        return pem.toString();
+    }
+
+    private static String keyAlias(KeyStore keyStore) throws GeneralSecurityException {
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (keyStore.isKeyEntry(alias)) {
+                return alias;
+            }
+        }
+        throw new RuntimeException("Key store does not contain a key entry");
+    }
+
+    private static void appendPem(StringBuilder pem, String label, byte[] der) {
+        pem.append("-----BEGIN ").append(label).append("-----\n")
+            .append(PEM_ENCODER.encodeToString(der))
+            .append("\n-----END ").append(label).append("-----\n");
+    }
+
+    /**
+     * Adds up the time spent reading from the wrapped stream.
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+        private long nanos;
+
+        private TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.skip(n);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package sh.buildit.credhub;
+
+/**
+ * The outputs one CredHub service was materialized to, handed to each of its {@link StoreTarget}s. Outputs no
+ * target asked for are {@code null}.
+ */
+final class MaterializedStores {
+    private final String service;
+    private final StoreMode storeMode;
+    private final StoreFile trustStore;
+    private final StoreFile keyStore;
+    private final String trustStorePem;
+    private final String keyStoreCertificateChainPem;
+    private final String keyStoreKeyPem;
+
+    MaterializedStores(String service, StoreMode storeMode, StoreFile trustStore, StoreFile keyStore,
+                       String trustStorePem, String keyStoreCertificateChainPem, String keyStoreKeyPem) {
+        this.service = service;
+        this.storeMode = storeMode;
+        this.trustStore = trustStore;
+        this.keyStore = keyStore;
+        this.trustStorePem = trustStorePem;
+        this.keyStoreCertificateChainPem = keyStoreCertificateChainPem;
+        this.keyStoreKeyPem = keyStoreKeyPem;
+    }
+
+    /**
+     * A written store: its {@code file://} location or a placeholder resolving to it, its type, and its password
+     * unless it is read without one.
+     */
+    static final class StoreFile {
+        private final String location;
+        private final String password;
+        private final String type;
+
+        StoreFile(String location, String password, String type) {
+            this.location = location;
+            this.password = password;
+            this.type = type;
+        }
+
+        String location() {
+            return location;
+        }
+
+        String password() {
+            return password;
+        }
+
+        String type() {
+            return type;
+        }
+    }
+
+    /**
+     * The CredHub service name, under which the {@link SslMaterial} is registered.
+     */
+    String service() {
+        return service;
+    }
+
+    StoreMode storeMode() {
+        return storeMode;
+    }
+
+    StoreFile trustStore() {
+        return trustStore;
+    }
+
+    StoreFile keyStore() {
+        return keyStore;
+    }
+
+    String trustStorePem() {
+        return trustStorePem;
+    }
+
+    String keyStoreCertificateChainPem() {
+        return keyStoreCertificateChainPem;
+    }
+
+    String keyStoreKeyPem() {
+        return keyStoreKeyPem;
+    }
+}
@@ -0,0 +1,46 @@
+package sh.buildit.credhub;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * MySQL Connector/J key store properties, published as HikariCP data source properties by default.
+ * {@code sslMode} is left to the application, as only it knows whether to verify the server's identity.
+ */
+final class MysqlTarget implements StoreTarget {
+    static final String NAME = "mysql";
+    static final String DEFAULT_PREFIX = "spring.datasource.hikari.data-source-properties";
+
+    private final String prefix;
+
+    MysqlTarget(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Set<Output> outputs(StoreMode storeMode) {
+        return EnumSet.of(Output.FILES);
+    }
+
+    @Override
+    public String prefix() {
+        return prefix;
+    }
+
+    @Override
+    public void apply(MaterializedStores stores, Map<String, Object> properties) {
+        if (CredHubKafkaEnvProcessor.PEM_STORE_TYPE.equals(stores.keyStore().type())) {
+            throw new IllegalArgumentException("Target " + NAME + " needs JKS or PKCS12 stores, not "
+                + CredHubKafkaEnvProcessor.PEM_STORE_TYPE);
+        }
+        putStore(properties, "trustCertificateKeyStore", stores.trustStore());
+        putStore(properties, "clientCertificateKeyStore", stores.keyStore());
+    }
+
+    private void putStore(Map<String, Object> properties, String name, MaterializedStores.StoreFile store) {
+        properties.put(prefix + "." + name + "Url", store.location());
+        properties.put(prefix + "." + name + "Password", store.password());
+        properties.put(prefix + "." + name + "Type", store.type());
+    }
+}
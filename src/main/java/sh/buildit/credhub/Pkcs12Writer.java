@@ -0,0 +1,185 @@
+package sh.buildit.credhub;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.PBEParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes a PKCS#12 file with an explicit iteration count for its key bags and MAC. {@code KeyStore.store} only
+ * takes the MAC and certificate bag counts from the JVM wide {@code keystore.pkcs12.*} system properties, which
+ * would leak into every other PKCS#12 store written at the same time. Certificates are not secret, so their bags
+ * are written unencrypted, as the JDK does with {@code keystore.pkcs12.certProtectionAlgorithm=NONE}.
+ */
+final class Pkcs12Writer {
+    private static final String KEY_PROTECTION_ALGORITHM = "PBEWithHmacSHA256AndAES_256";
+    private static final String MAC_ALGORITHM = "HmacPBESHA256";
+    private static final int SALT_LENGTH = 20;
+    private static final int IV_LENGTH = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final String DATA = "1.2.840.113549.1.7.1";
+    private static final String PBES2 = "1.2.840.113549.1.5.13";
+    private static final String SHA256 = "2.16.840.1.101.3.4.2.1";
+    private static final String SHROUDED_KEY_BAG = "1.2.840.113549.1.12.10.1.2";
+    private static final String CERT_BAG = "1.2.840.113549.1.12.10.1.3";
+    private static final String X509_CERTIFICATE = "1.2.840.113549.1.9.22.1";
+    private static final String FRIENDLY_NAME = "1.2.840.113549.1.9.20";
+    private static final String LOCAL_KEY_ID = "1.2.840.113549.1.9.21";
+    // Marks a certificate bag as a trusted certificate entry for the JDK's PKCS12 key store
+    private static final String TRUSTED_KEY_USAGE = "2.16.840.1.113894.746875.1.1";
+    private static final String ANY_EXTENDED_KEY_USAGE = "2.5.29.37.0";
+
+    private Pkcs12Writer() {
+    }
+
+    static byte[] write(KeyStore source, String password, int iterations) throws IOException, GeneralSecurityException {
+        final char[] secret = password.toCharArray();
+        final List<byte[]> bags = new ArrayList<>();
+        int keys = 0;
+        for (String alias : Collections.list(source.aliases())) {
+            if (source.isKeyEntry(alias)) {
+                final byte[] localKeyId = ("key-" + keys++).getBytes(StandardCharsets.US_ASCII);
+                final Certificate[] chain = source.getCertificateChain(alias);
+                bags.add(safeBag(SHROUDED_KEY_BAG, encryptedKey((PrivateKey) source.getKey(alias, secret), secret, iterations),
+                    attributes(alias, localKeyId, false)));
+                for (int i = 0; i < chain.length; i++) {
+                    bags.add(safeBag(CERT_BAG, certBag(chain[i]), i == 0 ? attributes(alias, localKeyId, false) : null));
+                }
+            } else if (source.isCertificateEntry(alias)) {
+                bags.add(safeBag(CERT_BAG, certBag(source.getCertificate(alias)), attributes(alias, null, true)));
+            }
+        }
+        final byte[] authenticatedSafe = sequence(contentInfo(sequence(bags.toArray(new byte[0][]))));
+        return sequence(
+            integer(3),
+            contentInfo(authenticatedSafe),
+            macData(authenticatedSafe, secret, iterations));
+    }
+
+    private static byte[] encryptedKey(PrivateKey key, char[] secret, int iterations) throws IOException, GeneralSecurityException {
+        final SecretKey pbeKey = SecretKeyFactory.getInstance(KEY_PROTECTION_ALGORITHM).generateSecret(new PBEKeySpec(secret));
+        final Cipher cipher = Cipher.getInstance(KEY_PROTECTION_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, pbeKey, new PBEParameterSpec(random(SALT_LENGTH), iterations, new IvParameterSpec(random(IV_LENGTH))));
+        final byte[] encrypted = cipher.doFinal(key.getEncoded());
+        // EncryptedPrivateKeyInfo
+        return sequence(sequence(oid(PBES2), cipher.getParameters().getEncoded()), octetString(encrypted));
+    }
+
+    private static byte[] certBag(Certificate certificate) throws GeneralSecurityException {
+        return sequence(oid(X509_CERTIFICATE), explicit(octetString(certificate.getEncoded())));
+    }
+
+    private static byte[] macData(byte[] authenticatedSafe, char[] secret, int iterations) throws GeneralSecurityException {
+        final byte[] salt = random(SALT_LENGTH);
+        final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(SecretKeyFactory.getInstance("PBE").generateSecret(new PBEKeySpec(secret)), new PBEParameterSpec(salt, iterations));
+        final byte[] digest = mac.doFinal(authenticatedSafe);
+        return sequence(
+            sequence(sequence(oid(SHA256), new byte[]{0x05, 0x00}), octetString(digest)),
+            octetString(salt),
+            integer(iterations));
+    }
+
+    private static byte[] safeBag(String type, byte[] value, byte[] attributes) {
+        return attributes == null
+            ? sequence(oid(type), explicit(value))
+            : sequence(oid(type), explicit(value), attributes);
+    }
+
+    private static byte[] attributes(String alias, byte[] localKeyId, boolean trusted) {
+        final List<byte[]> attributes = new ArrayList<>();
+        attributes.add(sequence(oid(FRIENDLY_NAME), set(der(0x1e, alias.getBytes(StandardCharsets.UTF_16BE)))));
+        if (localKeyId != null) {
+            attributes.add(sequence(oid(LOCAL_KEY_ID), set(octetString(localKeyId))));
+        }
+        if (trusted) {
+            attributes.add(sequence(oid(TRUSTED_KEY_USAGE), set(oid(ANY_EXTENDED_KEY_USAGE))));
+        }
+        return set(attributes.toArray(new byte[0][]));
+    }
+
+    private static byte[] contentInfo(byte[] data) {
+        return sequence(oid(DATA), explicit(octetString(data)));
+    }
+
+    private static byte[] random(int length) {
+        final byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] sequence(byte[]... elements) {
+        return der(0x30, concat(elements));
+    }
+
+    private static byte[] set(byte[]... elements) {
+        return der(0x31, concat(elements));
+    }
+
+    private static byte[] explicit(byte[] element) {
+        return der(0xa0, element);
+    }
+
+    private static byte[] octetString(byte[] value) {
+        return der(0x04, value);
+    }
+
+    private static byte[] integer(int value) {
+        return der(0x02, BigInteger.valueOf(value).toByteArray());
+    }
+
+    private static byte[] oid(String oid) {
+        final String[] arcs = oid.split("\\.");
+        final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        contents.write(Integer.parseInt(arcs[0]) * 40 + Integer.parseInt(arcs[1]));
+        for (int i = 2; i < arcs.length; i++) {
+            final long arc = Long.parseLong(arcs[i]);
+            for (int shift = (63 - Long.numberOfLeadingZeros(arc | 1)) / 7 * 7; shift > 0; shift -= 7) {
+                contents.write((int) (arc >>> shift) & 0x7f | 0x80);
+            }
+            contents.write((int) arc & 0x7f);
+        }
+        return der(0x06, contents.toByteArray());
+    }
+
+    private static byte[] der(int tag, byte[] contents) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(contents.length + 6);
+        outputStream.write(tag);
+        final int length = contents.length;
+        if (length < 0x80) {
+            outputStream.write(length);
+        } else {
+            final int bytes = 4 - Integer.numberOfLeadingZeros(length) / 8;
+            outputStream.write(0x80 | bytes);
+            for (int i = bytes - 1; i >= 0; i--) {
+                outputStream.write(length >>> (8 * i));
+            }
+        }
+        outputStream.write(contents, 0, length);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... elements) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (byte[] element : elements) {
+            outputStream.write(element, 0, element.length);
+        }
+        return outputStream.toByteArray();
+    }
+}
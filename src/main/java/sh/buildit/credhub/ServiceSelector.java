@@ -0,0 +1,182 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The CredHub service to process, read from the environment once and indexed so that matching a binding costs a
+ * hash lookup on its normalized name, however many services the application has bound. Names, tags and labels
+ * compare ignoring case and surrounding whitespace, and each selector is a comma separated list of exact values
+ * or globs, where {@code *} matches any run of characters and {@code ?} a single one.
+ */
+final class ServiceSelector {
+    static final String DEFAULT_TAG = "credhub";
+
+    private final Selector names;
+    private final Selector tags;
+    private final Selector labels;
+    private volatile String accepted;
+
+    ServiceSelector(String names, String tags, String labels) {
+        this.names = Selector.of(names);
+        this.tags = Selector.of(tags);
+        this.labels = Selector.of(labels);
+    }
+
+    /**
+     * Reads {@code CREDHUB_NAME}, {@code CREDHUB_SERVICE_TAG} and {@code CREDHUB_SERVICE_LABEL}. A service can be
+     * selected by name, by label or both, but not by tag alone.
+     */
+    static ServiceSelector fromEnvironment() {
+        final String names = System.getenv(CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR);
+        final String labels = System.getenv(CredHubKafkaEnvProcessor.CREDHUB_SERVICE_LABEL_ENV_VAR);
+        if (isBlank(names) && isBlank(labels)) {
+            throw new IllegalArgumentException("Environment variable " + CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR
+                + " is required, or " + CredHubKafkaEnvProcessor.CREDHUB_SERVICE_LABEL_ENV_VAR
+                + " to select the CredHub service by label");
+        }
+        final String tags = System.getenv(CredHubKafkaEnvProcessor.CREDHUB_SERVICE_TAG_ENV_VAR);
+        return new ServiceSelector(names, tags == null ? DEFAULT_TAG : tags, labels);
+    }
+
+    /**
+     * Whether the service is selected, remembering its name for {@link #serviceName()}.
+     */
+    boolean accept(CfService service) {
+        final String name = service.getName();
+        if (name == null || !names.matches(name) || !labels.matches(service.getLabel()) || !anyTag(service)) {
+            return false;
+        }
+        accepted = name;
+        return true;
+    }
+
+    /**
+     * The name of the selected service: the last one accepted, or the configured name if it is a single exact name.
+     */
+    String serviceName() {
+        final String name = accepted;
+        if (name != null) {
+            return name;
+        }
+        if (names.exact.size() == 1 && names.pattern == null) {
+            return names.original.get(0);
+        }
+        throw new IllegalStateException("No service bound to the application matches " + this);
+    }
+
+    private boolean anyTag(CfService service) {
+        if (tags.isEmpty()) {
+            return true;
+        }
+        for (String tag : service.getTags()) {
+            if (tags.matches(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        final List<String> parts = new ArrayList<>();
+        if (!names.isEmpty()) {
+            parts.add(CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR + "=" + String.join(",", names.original));
+        }
+        if (!labels.isEmpty()) {
+            parts.add(CredHubKafkaEnvProcessor.CREDHUB_SERVICE_LABEL_ENV_VAR + "=" + String.join(",", labels.original));
+        }
+        if (!tags.isEmpty()) {
+            parts.add(CredHubKafkaEnvProcessor.CREDHUB_SERVICE_TAG_ENV_VAR + "=" + String.join(",", tags.original));
+        }
+        return String.join(" and ", parts);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Exact values in a hash set, and all globs compiled into one alternation. An empty selector matches anything.
+     */
+    private static final class Selector {
+        private static final Selector ANY = new Selector(Collections.emptyList(), Collections.emptySet(), null);
+
+        private final List<String> original;
+        private final Set<String> exact;
+        private final Pattern pattern;
+
+        private Selector(List<String> original, Set<String> exact, Pattern pattern) {
+            this.original = original;
+            this.exact = exact;
+            this.pattern = pattern;
+        }
+
+        static Selector of(String value) {
+            if (isBlank(value)) {
+                return ANY;
+            }
+            final List<String> original = new ArrayList<>();
+            final Set<String> exact = new HashSet<>();
+            final List<String> globs = new ArrayList<>();
+            for (String entry : value.split(",")) {
+                if (entry.trim().isEmpty()) {
+                    continue;
+                }
+                original.add(entry.trim());
+                final String normalized = normalize(entry);
+                if (normalized.indexOf('*') >= 0 || normalized.indexOf('?') >= 0) {
+                    globs.add(glob(normalized));
+                } else {
+                    exact.add(normalized);
+                }
+            }
+            return new Selector(original, exact, globs.isEmpty() ? null : Pattern.compile(String.join("|", globs)));
+        }
+
+        boolean isEmpty() {
+            return original.isEmpty();
+        }
+
+        boolean matches(String value) {
+            if (isEmpty()) {
+                return true;
+            }
+            if (value == null) {
+                return false;
+            }
+            final String normalized = normalize(value);
+            return exact.contains(normalized) || pattern != null && pattern.matcher(normalized).matches();
+        }
+
+        private static String glob(String glob) {
+            final StringBuilder regex = new StringBuilder("(?:");
+            int literal = 0;
+            for (int i = 0; i < glob.length(); i++) {
+                final char c = glob.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (literal < i) {
+                        regex.append(Pattern.quote(glob.substring(literal, i)));
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                    literal = i + 1;
+                }
+            }
+            if (literal < glob.length()) {
+                regex.append(Pattern.quote(glob.substring(literal)));
+            }
+            return regex.append(')').toString();
+        }
+    }
+}
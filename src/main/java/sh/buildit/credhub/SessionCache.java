@@ -0,0 +1,56 @@
+package sh.buildit.credhub;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import java.time.Duration;
+
+/**
+ * Client session cache settings for the shared {@link SSLContext}. Every Kafka client in the JVM creates its engines
+ * from that context, so a reconnect after a broker roll resumes the session another client already negotiated with
+ * the same broker instead of running a full handshake. Settings left {@code null} keep the JDK defaults.
+ */
+final class SessionCache {
+    /**
+     * Read by the JDK when its TLS classes initialize, so it only takes effect if set before the first handshake.
+     */
+    static final String SESSION_TICKETS_PROPERTY = "jdk.tls.client.enableSessionTicketExtension";
+
+    private final Integer size;
+    private final Duration timeout;
+
+    SessionCache(Integer size, Duration timeout) {
+        if (size != null && size < 0) {
+            throw new IllegalArgumentException("Session cache size must not be negative, got " + size);
+        }
+        if (timeout != null && (timeout.isNegative() || timeout.getSeconds() > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Session timeout must be between 0 and " + Integer.MAX_VALUE
+                + " seconds, got " + timeout);
+        }
+        this.size = size;
+        this.timeout = timeout;
+    }
+
+    void applyTo(SSLContext sslContext) {
+        final SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (size != null) {
+            sessionContext.setSessionCacheSize(size);
+        }
+        if (timeout != null) {
+            sessionContext.setSessionTimeout((int) timeout.getSeconds());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return size + ":" + timeout;
+    }
+
+    /**
+     * Turns TLS 1.3 session tickets on or off for every client in the JVM, unless already set on the command line.
+     */
+    static void sessionTickets(boolean enabled) {
+        if (System.getProperty(SESSION_TICKETS_PROPERTY) == null) {
+            System.setProperty(SESSION_TICKETS_PROPERTY, Boolean.toString(enabled));
+        }
+    }
+}
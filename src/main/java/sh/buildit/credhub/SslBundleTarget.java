@@ -0,0 +1,56 @@
+package sh.buildit.credhub;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Spring Boot 3.1+ SSL bundle, {@code spring.ssl.bundle.jks.<name>} for key stores or
+ * {@code spring.ssl.bundle.pem.<name>} for PEM, which Redis, web clients and other bundle aware starters can
+ * refer to by name.
+ */
+final class SslBundleTarget implements StoreTarget {
+    static final String NAME = "ssl-bundle";
+    static final String JKS_PREFIX = "spring.ssl.bundle.jks.";
+    static final String PEM_PREFIX = "spring.ssl.bundle.pem.";
+
+    private final String bundle;
+
+    SslBundleTarget(String bundle) {
+        this.bundle = bundle;
+    }
+
+    @Override
+    public Set<Output> outputs(StoreMode storeMode) {
+        // Bundles cannot take an SSLContext, so shared mode still writes files for them
+        return storeMode == StoreMode.PEM ? EnumSet.of(Output.PEM) : EnumSet.of(Output.FILES);
+    }
+
+    @Override
+    public String prefix() {
+        return "spring.ssl.bundle";
+    }
+
+    @Override
+    public void apply(MaterializedStores stores, Map<String, Object> properties) {
+        if (stores.storeMode() == StoreMode.PEM) {
+            properties.put(PEM_PREFIX + bundle + ".keystore.certificate", stores.keyStoreCertificateChainPem());
+            properties.put(PEM_PREFIX + bundle + ".keystore.private-key", stores.keyStoreKeyPem());
+            properties.put(PEM_PREFIX + bundle + ".truststore.certificate", stores.trustStorePem());
+        } else if (CredHubKafkaEnvProcessor.PEM_STORE_TYPE.equals(stores.keyStore().type())) {
+            // Files converted to PEM hold the key and its chain in one file
+            properties.put(PEM_PREFIX + bundle + ".keystore.certificate", stores.keyStore().location());
+            properties.put(PEM_PREFIX + bundle + ".keystore.private-key", stores.keyStore().location());
+            properties.put(PEM_PREFIX + bundle + ".truststore.certificate", stores.trustStore().location());
+        } else {
+            putStore(properties, JKS_PREFIX + bundle + ".keystore", stores.keyStore());
+            putStore(properties, JKS_PREFIX + bundle + ".truststore", stores.trustStore());
+        }
+    }
+
+    private static void putStore(Map<String, Object> properties, String prefix, MaterializedStores.StoreFile store) {
+        properties.put(prefix + ".location", store.location());
+        properties.put(prefix + ".password", store.password());
+        properties.put(prefix + ".type", store.type());
+    }
+}
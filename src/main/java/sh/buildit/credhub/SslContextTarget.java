@@ -0,0 +1,27 @@
+package sh.buildit.credhub;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses the stores once into an {@link javax.net.ssl.SSLContext} and its key and trust managers, for clients
+ * configured in code, such as Lettuce or a Reactor Netty {@code WebClient}, through {@link CredHubSsl}.
+ */
+final class SslContextTarget implements StoreTarget {
+    static final String NAME = "ssl-context";
+
+    @Override
+    public Set<Output> outputs(StoreMode storeMode) {
+        return EnumSet.of(Output.MATERIAL);
+    }
+
+    @Override
+    public String prefix() {
+        return null;
+    }
+
+    @Override
+    public void apply(MaterializedStores stores, Map<String, Object> properties) {
+    }
+}
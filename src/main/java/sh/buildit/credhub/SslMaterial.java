@@ -0,0 +1,110 @@
+package sh.buildit.credhub;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Parsed key material and the {@link SSLContext} built from it, registered once per JVM under a name so every
+ * Kafka client can share it through {@link CredHubSslEngineFactory}, and other clients through {@link CredHubSsl}.
+ */
+final class SslMaterial {
+    private static final String SSL_CONTEXT_PROTOCOL = "TLS";
+    private static final ConcurrentMap<String, SslMaterial> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String digest;
+    private final KeyStore keyStore;
+    private final KeyStore trustStore;
+    private final KeyManagerFactory keyManagerFactory;
+    private final X509ExtendedTrustManager trustManager;
+    private final SSLContext sslContext;
+
+    private SslMaterial(String digest, KeyStore keyStore, KeyStore trustStore, KeyManagerFactory keyManagerFactory,
+                        X509ExtendedTrustManager trustManager, SSLContext sslContext) {
+        this.digest = digest;
+        this.keyStore = keyStore;
+        this.trustStore = trustStore;
+        this.keyManagerFactory = keyManagerFactory;
+        this.trustManager = trustManager;
+        this.sslContext = sslContext;
+    }
+
+    static SslMaterial of(KeyStore keyStore, String keyPassword, KeyStore trustStore) {
+        return of(keyStore, keyPassword, trustStore, false, new SessionCache(null, null));
+    }
+
+    /**
+     * @param includeJvmTrust whether to also trust the anchors the JVM trusts by default, such as its cacerts
+     */
+    static SslMaterial of(KeyStore keyStore, String keyPassword, KeyStore trustStore, boolean includeJvmTrust,
+                          SessionCache sessionCache) {
+        try {
+            final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, keyPassword.toCharArray());
+            final X509ExtendedTrustManager trustManager = IndexedTrustManager.of(trustStore, includeJvmTrust);
+            final SSLContext sslContext = SSLContext.getInstance(SSL_CONTEXT_PROTOCOL);
+            sslContext.init(keyManagerFactory.getKeyManagers(), new TrustManager[]{trustManager}, null);
+            sessionCache.applyTo(sslContext);
+            return new SslMaterial(null, keyStore, trustStore, keyManagerFactory, trustManager, sslContext);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to build SSLContext from CredHub stores", e);
+        }
+    }
+
+    /**
+     * Registers the material built by {@code factory} under {@code name}, unless material with the same content
+     * {@code digest} is already registered, in which case the existing instance is kept and returned.
+     */
+    static SslMaterial register(String name, String digest, Supplier<SslMaterial> factory) {
+        return REGISTRY.compute(name, (key, existing) -> {
+            if (existing != null && existing.digest.equals(digest)) {
+                return existing;
+            }
+            final SslMaterial built = factory.get();
+            return new SslMaterial(digest, built.keyStore, built.trustStore, built.keyManagerFactory,
+                built.trustManager, built.sslContext);
+        });
+    }
+
+    static SslMaterial get(String name) {
+        final SslMaterial material = REGISTRY.get(name);
+        if (material == null) {
+            throw new IllegalStateException("No CredHub SSL material registered under " + name);
+        }
+        return material;
+    }
+
+    KeyStore keyStore() {
+        return keyStore;
+    }
+
+    KeyStore trustStore() {
+        return trustStore;
+    }
+
+    KeyManagerFactory keyManagerFactory() {
+        return keyManagerFactory;
+    }
+
+    X509ExtendedTrustManager trustManager() {
+        return trustManager;
+    }
+
+    SSLContext sslContext() {
+        return sslContext;
+    }
+
+    /**
+     * @return the earliest expiry across the certificates in the key store
+     */
+    Instant notAfter() {
+        return KeyStores.notAfter(keyStore).orElse(Instant.MAX);
+    }
+}
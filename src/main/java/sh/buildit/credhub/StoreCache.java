@@ -0,0 +1,167 @@
+package sh.buildit.credhub;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content addressed directory of materialized stores. Each store is written once under the digest of its CredHub
+ * value, so restarts reuse the existing file and the directory never grows past {@code maxEntries}. Files this JVM
+ * has written or reused are never evicted, since their locations have been handed to clients that may read them
+ * again on any reconnect.
+ */
+final class StoreCache {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String JKS_SUFFIX = ".jks";
+    private static final String PKCS12_SUFFIX = ".p12";
+    private static final String JCEKS_SUFFIX = ".jceks";
+    private static final String PEM_SUFFIX = ".pem";
+    private static final List<String> STORE_SUFFIXES = Arrays.asList(JKS_SUFFIX, PKCS12_SUFFIX, JCEKS_SUFFIX, PEM_SUFFIX);
+    private static final Set<Path> IN_USE = ConcurrentHashMap.newKeySet();
+
+    private final Path directory;
+    private final Duration maxAge;
+    private final int maxEntries;
+
+    StoreCache(Path directory, Duration maxAge, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Store cache must allow at least one entry, got " + maxEntries);
+        }
+        this.directory = directory;
+        this.maxAge = maxAge;
+        this.maxEntries = maxEntries;
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * The file name suffix of a store of {@code type}, such as {@code .p12} for {@code PKCS12}.
+     */
+    static String suffix(String type) {
+        switch (type.trim().toUpperCase(Locale.ROOT)) {
+            case "PKCS12":
+                return PKCS12_SUFFIX;
+            case "JCEKS":
+                return JCEKS_SUFFIX;
+            case CredHubKafkaEnvProcessor.PEM_STORE_TYPE:
+                return PEM_SUFFIX;
+            default:
+                return JKS_SUFFIX;
+        }
+    }
+
+    /**
+     * Returns the cached file for {@code encoded}, a store of {@code type}, decoding it first if it does not exist
+     * yet.
+     */
+    Path materialize(String encoded, String type) throws IOException {
+        return materialize(KeyStores.digest(encoded), type, path -> KeyStores.decodeTo(encoded, path));
+    }
+
+    /**
+     * Returns the cached file named {@code digest}, holding a store of {@code type}, running {@code writer} against
+     * a temporary file first if it does not exist yet.
+     */
+    Path materialize(String digest, String type, StoreWriter writer) throws IOException {
+        Files.createDirectories(directory);
+        final Path target = directory.resolve(digest + suffix(type));
+        IN_USE.add(target.toAbsolutePath());
+        if (Files.isRegularFile(target)) {
+            // Refresh the timestamp so entries still in use are not evicted by age
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+        } else {
+            final Path tempFile = Files.createTempFile(directory, null, TEMP_SUFFIX);
+            try {
+                writer.writeTo(tempFile);
+                move(tempFile, target);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        evict();
+        return target;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes stale entries, then the oldest ones beyond {@code maxEntries}, counting but never deleting the files
+     * this JVM uses.
+     */
+    private void evict() throws IOException {
+        final Instant cutoff = Instant.now().minus(maxAge);
+        final List<Path> entries = new ArrayList<>();
+        int inUse = 0;
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                final boolean store = isStore(entry);
+                if (!store && !entry.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    continue;
+                }
+                if (IN_USE.contains(entry.toAbsolutePath())) {
+                    inUse++;
+                } else if (Files.getLastModifiedTime(entry).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(entry);
+                } else if (store) {
+                    entries.add(entry);
+                }
+            }
+        }
+        final int keep = Math.max(0, maxEntries - inUse);
+        if (entries.size() <= keep) {
+            return;
+        }
+        entries.sort(Comparator.comparing(StoreCache::lastModified).reversed());
+        for (Path entry : entries.subList(keep, entries.size())) {
+            Files.deleteIfExists(entry);
+        }
+    }
+
+    private static boolean isStore(Path entry) {
+        final String name = entry.getFileName().toString();
+        for (String suffix : STORE_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    interface StoreWriter {
+        void writeTo(Path path) throws IOException;
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package sh.buildit.credhub;
+
+/**
+ * Target format and PBE iteration count for stores re-encoded before they are written.
+ */
+final class StoreConversion {
+    private final StoreFormat format;
+    private final int iterations;
+
+    StoreConversion(StoreFormat format, int iterations) {
+        this.format = format;
+        this.iterations = iterations;
+    }
+
+    StoreFormat format() {
+        return format;
+    }
+
+    int iterations() {
+        return iterations;
+    }
+
+    @Override
+    public String toString() {
+        return format + ":" + iterations;
+    }
+}
@@ -0,0 +1,43 @@
+package sh.buildit.credhub;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The JVM wide executor that decodes, writes and validates stores off the startup thread.
+ */
+final class StoreExecutor {
+    private static final int MAX_PLATFORM_THREADS = 4;
+    private static volatile ExecutorService executor;
+
+    private StoreExecutor() {
+    }
+
+    static ExecutorService shared() {
+        if (executor == null) {
+            synchronized (StoreExecutor.class) {
+                if (executor == null) {
+                    executor = newExecutor();
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            // Virtual threads on JDK 21+, looked up reflectively as the library still targets Java 8
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            final AtomicInteger count = new AtomicInteger();
+            final int threads = Math.min(MAX_PLATFORM_THREADS, Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                final Thread thread = new Thread(runnable, "credhub-store-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package sh.buildit.credhub;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Format a CredHub store is re-encoded to before it is written, so each Kafka client parses the cheapest format.
+ */
+enum StoreFormat {
+    /**
+     * PKCS#12 with a configurable PBE and MAC iteration count. The store password is published next to the file,
+     * so the default key derivation work only slows down every {@code KeyStore.load}.
+     */
+    PKCS12("PKCS12") {
+        @Override
+        byte[] encode(KeyStore source, String password, int iterations) {
+            try {
+                return Pkcs12Writer.write(source, password, iterations);
+            } catch (IOException | GeneralSecurityException e) {
+                throw new RuntimeException("Unable to convert store to " + type(), e);
+            }
+        }
+    },
+    /**
+     * PEM file for Kafka 2.7+, holding an unencrypted private key and its chain, or the trusted certificates.
+     */
+    PEM(CredHubKafkaEnvProcessor.PEM_STORE_TYPE) {
+        @Override
+        byte[] encode(KeyStore source, String password, int iterations) {
+            final String pem;
+            try {
+                pem = Collections.list(source.aliases()).stream().anyMatch(alias -> isKeyEntry(source, alias))
+                    ? KeyStores.toPrivateKeyPem(source, password) + KeyStores.toCertificateChainPem(source)
+                    : KeyStores.toCertificatesPem(source);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("Unable to convert store to " + type(), e);
+            }
+            return pem.getBytes(StandardCharsets.US_ASCII);
+        }
+    };
+
+    private final String type;
+
+    StoreFormat(String type) {
+        this.type = type;
+    }
+
+    String type() {
+        return type;
+    }
+
+    abstract byte[] encode(KeyStore source, String password, int iterations);
+
+    static StoreFormat of(String value) {
+        for (StoreFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value.trim())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown store format " + value + ", expected one of " + Arrays.toString(values()));
+    }
+
+    private static boolean isKeyEntry(KeyStore keyStore, String alias) {
+        try {
+            return keyStore.isKeyEntry(alias);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to read store entry " + alias, e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+
+/**
+ * Names of the CredHub credentials that hold one store: its Base64 content, password and type.
+ */
+final class StoreKeys {
+    private final String location;
+    private final String password;
+    private final String type;
+
+    StoreKeys(String location, String password, String type) {
+        this.location = location;
+        this.password = password;
+        this.type = type;
+    }
+
+    String location() {
+        return location;
+    }
+
+    String encoded(CfCredentials cfCredentials) {
+        final Object value = cfCredentials.getMap().get(location);
+        if (value == null) {
+            throw new RuntimeException("Failure grabbing value " + location + " from CredHub");
+        }
+        return value.toString();
+    }
+
+    String password(CfCredentials cfCredentials) {
+        return cfCredentials.getMap().get(password).toString();
+    }
+
+    String type(CfCredentials cfCredentials) {
+        return cfCredentials.getMap().get(type).toString();
+    }
+
+    /**
+     * Identifies the store content together with the settings needed to read it.
+     */
+    String digest(CfCredentials cfCredentials, Object... extra) {
+        final Object[] values = new Object[extra.length + 3];
+        values[0] = cfCredentials.getMap().get(location);
+        values[1] = cfCredentials.getMap().get(password);
+        values[2] = cfCredentials.getMap().get(type);
+        System.arraycopy(extra, 0, values, 3, extra.length);
+        return KeyStores.digest(values);
+    }
+}
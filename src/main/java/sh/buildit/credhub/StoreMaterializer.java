@@ -0,0 +1,254 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Decodes, converts and writes the stores of one processing pass. Work runs on {@code executor} so every store of
+ * every cluster is materialized in parallel, and stores with identical content are only written once per JVM.
+ */
+final class StoreMaterializer {
+    /**
+     * Written files by content digest and directory, shared by every pass in the JVM: the bootstrap and main
+     * contexts, refreshes and cached test contexts all reuse the first pass's files, and concurrent passes wait
+     * for the one write in flight.
+     */
+    private static final ConcurrentMap<String, CompletableFuture<Path>> FILES = new ConcurrentHashMap<>();
+
+    private final StoreCache storeCache;
+    private final StoreConversion conversion;
+    private final Timing timing;
+    private final boolean validate;
+    private final Executor executor;
+
+    /**
+     * When file stores are materialized.
+     */
+    enum Timing {
+        /**
+         * During environment processing.
+         */
+        EAGER,
+        /**
+         * In the background, from environment processing on.
+         */
+        ASYNC,
+        /**
+         * On the thread that first reads the location.
+         */
+        LAZY
+    }
+
+    StoreMaterializer(StoreCache storeCache, StoreConversion conversion, Timing timing, boolean validate,
+                      Executor executor) {
+        this.storeCache = storeCache;
+        this.conversion = conversion;
+        this.timing = timing;
+        this.validate = validate;
+        this.executor = executor;
+    }
+
+    /**
+     * The {@code file://} location of the store, or unless eager a placeholder that resolves to it.
+     */
+    CompletableFuture<String> location(String service, CfCredentials cfCredentials, StoreKeys keys) {
+        return location(service, cfCredentials, keys, null);
+    }
+
+    /**
+     * The {@code file://} location of the store, reduced by {@code pruner} unless {@code null}.
+     */
+    CompletableFuture<String> location(String service, CfCredentials cfCredentials, StoreKeys keys,
+                                       TrustStorePruner pruner) {
+        final StoreMetrics.Recorder recorder = StoreMetrics.recorder(service, keys.location());
+        if (timing != Timing.EAGER) {
+            final String name = keys.digest(cfCredentials, conversion, storeCache == null ? null : storeCache.directory(), pruner);
+            final Callable<String> task = () -> {
+                final Path path = file(recorder, cfCredentials, keys, pruner);
+                if (conversion == null) {
+                    // Always validate before handing out the location, whatever validate says, so a corrupt store
+                    // fails on the read that resolves it rather than later inside Kafka; conversion already loads it
+                    validate(recorder, path, cfCredentials, keys);
+                }
+                return toLocation(path);
+            };
+            return CompletableFuture.completedFuture(timing == Timing.ASYNC
+                ? DeferredStores.submit(name, task)
+                : DeferredStores.defer(name, task));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            final Path path = file(recorder, cfCredentials, keys, pruner);
+            if (validate && conversion == null) {
+                validate(recorder, path, cfCredentials, keys);
+            }
+            return toLocation(path);
+        }, executor);
+    }
+
+    /**
+     * Loads the store in memory without touching the file system.
+     */
+    CompletableFuture<KeyStore> load(String service, CfCredentials cfCredentials, StoreKeys keys) {
+        return load(service, cfCredentials, keys, null);
+    }
+
+    CompletableFuture<KeyStore> load(String service, CfCredentials cfCredentials, StoreKeys keys, TrustStorePruner pruner) {
+        final StoreMetrics.Recorder recorder = StoreMetrics.recorder(service, keys.location());
+        return CompletableFuture.supplyAsync(() -> parse(recorder, cfCredentials, keys, pruner), executor);
+    }
+
+    static KeyStore parse(StoreMetrics.Recorder recorder, CfCredentials cfCredentials, StoreKeys keys) {
+        return parse(recorder, cfCredentials, keys, null);
+    }
+
+    /**
+     * Decodes and parses the store in memory, reduced by {@code pruner} unless {@code null}, recording its metrics
+     * under {@code recorder}.
+     */
+    static KeyStore parse(StoreMetrics.Recorder recorder, CfCredentials cfCredentials, StoreKeys keys,
+                          TrustStorePruner pruner) {
+        final String encoded = recorder.time(StoreMetrics.Phase.LOOKUP, () -> keys.encoded(cfCredentials));
+        recorder.encoded(encoded);
+        final KeyStore keyStore = prune(recorder, pruner, keys,
+            KeyStores.load(encoded, keys.password(cfCredentials), keys.type(cfCredentials), recorder));
+        recorder.parsed(keyStore);
+        return keyStore;
+    }
+
+    /**
+     * Runs other per-cluster work on the same executor as the stores.
+     */
+    CompletableFuture<Void> run(Runnable task) {
+        return CompletableFuture.runAsync(task, executor);
+    }
+
+    String type(CfCredentials cfCredentials, StoreKeys keys) {
+        return conversion == null ? keys.type(cfCredentials) : conversion.format().type();
+    }
+
+    /**
+     * The password to publish for the written store; PEM files are read without one.
+     */
+    Optional<String> password(CfCredentials cfCredentials, StoreKeys keys) {
+        if (conversion != null && conversion.format() == StoreFormat.PEM) {
+            return Optional.empty();
+        }
+        return Optional.of(keys.password(cfCredentials));
+    }
+
+    /**
+     * Waits for {@code future}, rethrowing the original failure rather than a {@link CompletionException}.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void validate(StoreMetrics.Recorder recorder, Path path, CfCredentials cfCredentials, StoreKeys keys) {
+        recorder.parsed(recorder.time(StoreMetrics.Phase.VALIDATE,
+            () -> KeyStores.load(path, keys.password(cfCredentials), keys.type(cfCredentials))));
+    }
+
+    private static KeyStore prune(StoreMetrics.Recorder recorder, TrustStorePruner pruner, StoreKeys keys, KeyStore keyStore) {
+        return pruner == null ? keyStore : recorder.time(StoreMetrics.Phase.PRUNE, () -> pruner.prune(keyStore, keys.location()));
+    }
+
+    private Path file(StoreMetrics.Recorder recorder, CfCredentials cfCredentials, StoreKeys keys,
+                      TrustStorePruner pruner) {
+        final String encoded = recorder.time(StoreMetrics.Phase.LOOKUP, () -> keys.encoded(cfCredentials));
+        recorder.encoded(encoded);
+        final String digest;
+        if (pruner != null) {
+            digest = KeyStores.digest(encoded, keys.password(cfCredentials), conversion, pruner);
+        } else if (conversion != null) {
+            digest = KeyStores.digest(encoded, keys.password(cfCredentials), conversion);
+        } else {
+            digest = KeyStores.digest(encoded);
+        }
+        final String key = digest + '@' + (storeCache == null ? "" : storeCache.directory().toAbsolutePath());
+        while (true) {
+            final CompletableFuture<Path> created = new CompletableFuture<>();
+            final CompletableFuture<Path> existing = FILES.putIfAbsent(key, created);
+            if (existing == null) {
+                try {
+                    final Path path = write(recorder, cfCredentials, keys, pruner, encoded, digest);
+                    created.complete(path);
+                    return path;
+                } catch (RuntimeException e) {
+                    // Let the next pass try again rather than replaying the failure
+                    FILES.remove(key, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            final Path path = join(existing);
+            if (Files.isRegularFile(path)) {
+                return path;
+            }
+            // Evicted or cleaned up since it was written
+            FILES.remove(key, existing);
+        }
+    }
+
+    private Path write(StoreMetrics.Recorder recorder, CfCredentials cfCredentials, StoreKeys keys,
+                       TrustStorePruner pruner, String encoded, String digest) {
+        final StoreCache.StoreWriter writer;
+        if (conversion == null && pruner == null) {
+            writer = path -> KeyStores.decodeTo(encoded, path, recorder);
+        } else {
+            // Loading the incoming store to convert or prune it also validates it
+            writer = path -> {
+                final String password = keys.password(cfCredentials);
+                final KeyStore source = prune(recorder, pruner, keys,
+                    KeyStores.load(encoded, password, keys.type(cfCredentials), recorder));
+                recorder.parsed(source);
+                final long start = System.nanoTime();
+                if (conversion == null) {
+                    try (final OutputStream outputStream = Files.newOutputStream(path)) {
+                        source.store(outputStream, password.toCharArray());
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException("Unable to write pruned " + keys.location(), e);
+                    }
+                } else {
+                    Files.write(path, conversion.format().encode(source, password, conversion.iterations()));
+                }
+                recorder.record(StoreMetrics.Phase.WRITE, System.nanoTime() - start);
+            };
+        }
+        final String type = type(cfCredentials, keys);
+        try {
+            if (storeCache != null) {
+                return storeCache.materialize(digest, type, writer);
+            }
+            final Path tempFile = Files.createTempFile(null, StoreCache.suffix(type));
+            writer.writeTo(tempFile);
+            return tempFile;
+        } catch (IOException e) {
+            System.err.println("Problem writing out key " + keys.location());
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toLocation(Path path) {
+        return "file://" + path.toAbsolutePath();
+    }
+}
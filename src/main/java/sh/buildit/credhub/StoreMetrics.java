@@ -0,0 +1,209 @@
+package sh.buildit.credhub;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Timings, sizes and expiry of the CredHub stores. The processor runs before any meter registry exists, so values
+ * are buffered here and replayed to each {@link Listener} once one subscribes, after which they are forwarded as they
+ * are recorded.
+ */
+final class StoreMetrics {
+    static final int MAX_BUFFERED_TIMINGS = 1024;
+    private static final List<Timing> TIMINGS = new ArrayList<>();
+    private static final ConcurrentMap<String, Store> STORES = new ConcurrentHashMap<>();
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private StoreMetrics() {
+    }
+
+    enum Phase {
+        LOOKUP, DECODE, LOAD, PRUNE, WRITE, VALIDATE;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Receives every buffered value on subscription and every new one afterwards.
+     */
+    interface Listener {
+        void timing(Timing timing);
+
+        void store(Store store);
+    }
+
+    static final class Timing {
+        final String service;
+        final String store;
+        final Phase phase;
+        final long nanos;
+
+        private Timing(String service, String store, Phase phase, long nanos) {
+            this.service = service;
+            this.store = store;
+            this.phase = phase;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * The latest known state of one store; values not known yet are {@code NaN}.
+     */
+    static final class Store {
+        final String service;
+        final String store;
+        private volatile double bytes = Double.NaN;
+        private volatile double entries = Double.NaN;
+        private volatile double notAfterEpochSeconds = Double.NaN;
+
+        private Store(String service, String store) {
+            this.service = service;
+            this.store = store;
+        }
+
+        double bytes() {
+            return bytes;
+        }
+
+        double entries() {
+            return entries;
+        }
+
+        double notAfterEpochSeconds() {
+            return notAfterEpochSeconds;
+        }
+    }
+
+    /**
+     * Records values for the store held in credential {@code store} of service {@code service}.
+     */
+    static Recorder recorder(String service, String store) {
+        return new Recorder(service, store);
+    }
+
+    /**
+     * Replays the buffered values to {@code listener} and forwards new ones until the returned subscription is
+     * closed.
+     */
+    static synchronized Subscription subscribe(Listener listener) {
+        for (Timing timing : TIMINGS) {
+            listener.timing(timing);
+        }
+        for (Store store : STORES.values()) {
+            listener.store(store);
+        }
+        LISTENERS.add(listener);
+        return new Subscription(listener);
+    }
+
+    static int listeners() {
+        return LISTENERS.size();
+    }
+
+    static synchronized Collection<Store> stores() {
+        return Collections.unmodifiableCollection(new ArrayList<>(STORES.values()));
+    }
+
+    private static synchronized void record(Timing timing) {
+        // Keep replaying startup timings to late subscribers, but stop buffering once rotation has run for a while
+        if (TIMINGS.size() < MAX_BUFFERED_TIMINGS) {
+            TIMINGS.add(timing);
+        }
+        for (Listener listener : LISTENERS) {
+            listener.timing(timing);
+        }
+    }
+
+    private static synchronized Store store(String service, String store) {
+        return STORES.computeIfAbsent(service + "/" + store, key -> new Store(service, store));
+    }
+
+    private static synchronized void updated(Store store) {
+        for (Listener listener : LISTENERS) {
+            listener.store(store);
+        }
+    }
+
+    /**
+     * Stops forwarding values to one listener, so a closed meter registry is no longer reachable from here.
+     */
+    static final class Subscription implements AutoCloseable {
+        private final Listener listener;
+
+        private Subscription(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            LISTENERS.remove(listener);
+        }
+    }
+
+    static final class Recorder {
+        private final String service;
+        private final String store;
+
+        private Recorder(String service, String store) {
+            this.service = service;
+            this.store = store;
+        }
+
+        <T> T time(Phase phase, Supplier<T> task) {
+            final long start = System.nanoTime();
+            try {
+                return task.get();
+            } finally {
+                record(phase, System.nanoTime() - start);
+            }
+        }
+
+        void record(Phase phase, long nanos) {
+            StoreMetrics.record(new Timing(service, store, phase, nanos));
+        }
+
+        /**
+         * Records the decoded size of the store from the length of its Base64 value.
+         */
+        void encoded(String encoded) {
+            int padding = 0;
+            for (int i = encoded.length() - 1; i >= 0 && encoded.charAt(i) == '='; i--) {
+                padding++;
+            }
+            final Store current = current();
+            current.bytes = encoded.length() / 4 * 3 - padding;
+            updated(current);
+        }
+
+        /**
+         * Records the entry count and earliest certificate expiry of the parsed store.
+         */
+        void parsed(KeyStore keyStore) {
+            final Store current = current();
+            try {
+                current.entries = keyStore.size();
+            } catch (KeyStoreException e) {
+                throw new RuntimeException("Unable to count store entries", e);
+            }
+            current.notAfterEpochSeconds = KeyStores.notAfter(keyStore)
+                .map(notAfter -> (double) notAfter.getEpochSecond())
+                .orElse(Double.NaN);
+            updated(current);
+        }
+
+        private Store current() {
+            return store(service, store);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package sh.buildit.credhub;
+
+import java.util.Arrays;
+
+/**
+ * How the decoded CredHub stores are handed over to Kafka.
+ */
+enum StoreMode {
+    /**
+     * Decode each store to a temporary file and publish its location.
+     */
+    FILE,
+    /**
+     * Keep the decoded stores in memory and publish them as inline PEM properties.
+     */
+    PEM,
+    /**
+     * Build one {@link javax.net.ssl.SSLContext} per JVM and hand it to every Kafka client through
+     * {@link CredHubSslEngineFactory}.
+     */
+    SHARED;
+
+    static StoreMode of(String value) {
+        for (StoreMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown store mode " + value + ", expected one of " + Arrays.toString(values()));
+    }
+}
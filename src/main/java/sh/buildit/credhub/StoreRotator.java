@@ -0,0 +1,108 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Polls a {@link CredentialsSource} and re-registers the shared {@link SslMaterial} when the stores change. The swap
+ * is atomic, so engines created afterwards use the new material while existing connections keep the old one until
+ * they close. Polling speeds up once the key store certificate is within {@code refreshAhead} of expiring.
+ */
+final class StoreRotator {
+    private static final Log LOG = LogFactory.getLog(StoreRotator.class);
+    static final Duration EXPIRING_POLL_INTERVAL = Duration.ofMinutes(1);
+    private static final ConcurrentMap<String, StoreRotator> ROTATORS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final CredentialsSource source;
+    private final Consumer<CfCredentials> registrar;
+    private final Duration interval;
+    private final Duration refreshAhead;
+    private final Clock clock;
+    private ScheduledExecutorService scheduler;
+
+    StoreRotator(String name, CredentialsSource source, Consumer<CfCredentials> registrar,
+                 Duration interval, Duration refreshAhead, Clock clock) {
+        this.name = name;
+        this.source = source;
+        this.registrar = registrar;
+        this.interval = interval;
+        this.refreshAhead = refreshAhead;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts polling for {@code name}, unless a rotator is already running for it in this JVM.
+     */
+    static void start(String name, CredentialsSource source, Consumer<CfCredentials> registrar,
+                      Duration interval, Duration refreshAhead) {
+        ROTATORS.computeIfAbsent(name, key -> {
+            final StoreRotator rotator = new StoreRotator(key, source, registrar, interval, refreshAhead, Clock.systemUTC());
+            rotator.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "credhub-rotation-" + key);
+                thread.setDaemon(true);
+                return thread;
+            });
+            rotator.schedule();
+            return rotator;
+        });
+    }
+
+    static StoreRotator get(String name) {
+        return ROTATORS.get(name);
+    }
+
+    /**
+     * Reads the source once and swaps in new material if the stores changed.
+     *
+     * @return whether the material was replaced
+     */
+    boolean poll() {
+        final SslMaterial before = SslMaterial.get(name);
+        registrar.accept(source.read());
+        return SslMaterial.get(name) != before;
+    }
+
+    /**
+     * @return the delay until the next poll, shortened when the current certificate is close to expiry
+     */
+    Duration nextDelay() {
+        final Instant refreshAt = SslMaterial.get(name).notAfter().minus(refreshAhead);
+        final Duration untilRefresh = Duration.between(clock.instant(), refreshAt);
+        if (untilRefresh.isNegative() || untilRefresh.isZero()) {
+            return min(interval, EXPIRING_POLL_INTERVAL);
+        }
+        return min(interval, untilRefresh);
+    }
+
+    private void schedule() {
+        scheduler.schedule(this::run, nextDelay().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try {
+            if (poll()) {
+                LOG.info("Rotated CredHub stores for " + name);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Problem rotating CredHub stores for " + name, e);
+        } finally {
+            schedule();
+        }
+    }
+
+    private static Duration min(Duration first, Duration second) {
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+}
@@ -0,0 +1,41 @@
+package sh.buildit.credhub;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A consumer of the stores of one CredHub service, such as Kafka or a Spring Boot SSL bundle. The stores are
+ * materialized once per service, and every target shares the same files, PEM text and parsed material.
+ */
+interface StoreTarget {
+
+    /**
+     * Forms in which a target can receive the stores.
+     */
+    enum Output {
+        /**
+         * Store files, see {@link MaterializedStores#trustStore()}.
+         */
+        FILES,
+        /**
+         * Inline PEM text, see {@link MaterializedStores#trustStorePem()}.
+         */
+        PEM,
+        /**
+         * A registered {@link SslMaterial}, see {@link CredHubSsl}.
+         */
+        MATERIAL
+    }
+
+    /**
+     * @return the outputs this target needs under {@code storeMode}
+     */
+    Set<Output> outputs(StoreMode storeMode);
+
+    /**
+     * @return the property prefix this target publishes under, or {@code null} if it publishes no properties
+     */
+    String prefix();
+
+    void apply(MaterializedStores stores, Map<String, Object> properties);
+}
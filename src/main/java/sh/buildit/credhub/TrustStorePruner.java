@@ -0,0 +1,205 @@
+package sh.buildit.credhub;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces a trust store to the certificates needed to validate a known set of broker certificates: every entry
+ * that is itself a certificate of one of the reference chains, such as a pinned broker certificate, and every
+ * anchor or intermediate that issues one, followed up to a self-signed root. Clients then load and index a handful
+ * of certificates rather than the whole CredHub bundle.
+ */
+final class TrustStorePruner {
+    private static final Log LOG = LogFactory.getLog(TrustStorePruner.class);
+
+    private final Map<Path, List<X509Certificate>> chains;
+    private final String digest;
+
+    /**
+     * @param chains broker certificates, or the chains they present, by the file each was read from
+     */
+    TrustStorePruner(Map<Path, List<X509Certificate>> chains) {
+        if (chains.isEmpty()) {
+            throw new IllegalArgumentException("Trust store pruning needs at least one broker certificate");
+        }
+        this.chains = chains;
+        final List<Object> fingerprints = new ArrayList<>();
+        chains.values().forEach(chain -> chain.forEach(certificate -> fingerprints.add(IndexedTrustManager.fingerprint(certificate))));
+        this.digest = KeyStores.digest(fingerprints.toArray());
+    }
+
+    /**
+     * Reads each file as PEM or DER encoded certificates, broker certificate first.
+     */
+    static TrustStorePruner of(List<Path> files) {
+        final Map<Path, List<X509Certificate>> chains = new LinkedHashMap<>();
+        for (Path file : files) {
+            try (final InputStream inputStream = Files.newInputStream(file)) {
+                final List<X509Certificate> chain = new ArrayList<>();
+                for (Certificate certificate : CertificateFactory.getInstance("X.509").generateCertificates(inputStream)) {
+                    chain.add((X509Certificate) certificate);
+                }
+                if (chain.isEmpty()) {
+                    throw new IllegalArgumentException("No certificate in " + file);
+                }
+                chains.put(file, chain);
+            } catch (IOException | GeneralSecurityException e) {
+                throw new IllegalArgumentException("Unable to read broker certificates from " + file, e);
+            }
+        }
+        return new TrustStorePruner(chains);
+    }
+
+    /**
+     * Copies the entries of {@code trustStore} that some reference chain needs into a new store of the same type.
+     *
+     * @throws IllegalArgumentException if a reference chain has no issuer in {@code trustStore}, since the pruned
+     *                                  store could not validate that broker either
+     */
+    Pruned prune(KeyStore trustStore) {
+        try {
+            final Map<String, X509Certificate> entries = new LinkedHashMap<>();
+            for (String alias : Collections.list(trustStore.aliases())) {
+                final Certificate certificate = trustStore.getCertificate(alias);
+                if (trustStore.isCertificateEntry(alias) && certificate instanceof X509Certificate) {
+                    entries.put(alias, (X509Certificate) certificate);
+                }
+            }
+            final IndexedTrustManager index = new IndexedTrustManager(entries.values());
+
+            final Map<ByteBuffer, X509Certificate> needed = new LinkedHashMap<>();
+            for (Map.Entry<Path, List<X509Certificate>> chain : chains.entrySet()) {
+                if (!collectIssuers(index, chain.getValue(), needed)) {
+                    throw new IllegalArgumentException("The trust store neither contains nor issues the broker certificates in "
+                        + chain.getKey() + ", issued by " + chain.getValue().get(chain.getValue().size() - 1).getIssuerX500Principal());
+                }
+            }
+
+            final KeyStore pruned = KeyStore.getInstance(trustStore.getType());
+            pruned.load(null, null);
+            final Map<String, String> dropped = new LinkedHashMap<>();
+            for (Map.Entry<String, X509Certificate> entry : entries.entrySet()) {
+                if (needed.containsKey(IndexedTrustManager.fingerprint(entry.getValue()))) {
+                    pruned.setCertificateEntry(entry.getKey(), entry.getValue());
+                } else {
+                    dropped.put(entry.getKey(), entry.getValue().getSubjectX500Principal().getName());
+                }
+            }
+            return new Pruned(pruned, entries.size(), dropped);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new RuntimeException("Unable to prune trust store", e);
+        }
+    }
+
+    /**
+     * Prunes {@code trustStore} and reports what was dropped from it under the name {@code store}.
+     */
+    KeyStore prune(KeyStore trustStore, String store) {
+        final Pruned pruned = prune(trustStore);
+        LOG.info(pruned.report(store));
+        return pruned.keyStore();
+    }
+
+    /**
+     * Identifies the reference chains, so stores pruned against other brokers are not mistaken for each other.
+     */
+    @Override
+    public String toString() {
+        return digest;
+    }
+
+    /**
+     * Adds every certificate of {@code chain} that is trusted itself, and every trusted certificate that issues one,
+     * and their issuers in turn, to {@code needed}, returning whether the chain reached at least one of them.
+     */
+    private static boolean collectIssuers(IndexedTrustManager index, List<X509Certificate> chain,
+                                          Map<ByteBuffer, X509Certificate> needed) {
+        boolean anchored = false;
+        for (X509Certificate certificate : chain) {
+            final X509Certificate trusted = index.trusted(certificate);
+            if (trusted != null) {
+                anchored = true;
+                needed.putIfAbsent(IndexedTrustManager.fingerprint(trusted), trusted);
+            }
+        }
+        final Deque<X509Certificate> pending = new ArrayDeque<>(chain);
+        while (!pending.isEmpty()) {
+            final X509Certificate certificate = pending.pop();
+            for (X509Certificate candidate : index.anchorsFor(new X509Certificate[]{certificate})) {
+                if (!issues(candidate, certificate)) {
+                    continue;
+                }
+                anchored = true;
+                if (needed.putIfAbsent(IndexedTrustManager.fingerprint(candidate), candidate) == null
+                    && !issues(candidate, candidate)) {
+                    pending.push(candidate);
+                }
+            }
+        }
+        return anchored;
+    }
+
+    private static boolean issues(X509Certificate issuer, X509Certificate certificate) {
+        if (!issuer.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+            return false;
+        }
+        try {
+            certificate.verify(issuer.getPublicKey());
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A pruned trust store and what was left out of it.
+     */
+    static final class Pruned {
+        private final KeyStore keyStore;
+        private final int entries;
+        private final Map<String, String> dropped;
+
+        private Pruned(KeyStore keyStore, int entries, Map<String, String> dropped) {
+            this.keyStore = keyStore;
+            this.entries = entries;
+            this.dropped = dropped;
+        }
+
+        KeyStore keyStore() {
+            return keyStore;
+        }
+
+        /**
+         * Subjects of the dropped certificates, by alias.
+         */
+        Map<String, String> dropped() {
+            return Collections.unmodifiableMap(dropped);
+        }
+
+        String report(String store) {
+            final StringBuilder report = new StringBuilder("Pruned trust store ").append(store)
+                .append(" to ").append(entries - dropped.size()).append(" of ").append(entries).append(" certificates");
+            dropped.forEach((alias, subject) -> report.append(System.lineSeparator())
+                .append("  dropped ").append(alias).append(": ").append(subject));
+            return report.toString();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package sh.buildit.credhub;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.cfenv.core.CfCredentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-reads a file holding {@code VCAP_SERVICES} JSON and returns the credentials of the named service. The
+ * {@code VCAP_SERVICES} environment variable itself cannot change within a running process.
+ */
+class VcapServicesFileSource implements CredentialsSource {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, List<Map<String, Object>>>> VCAP_SERVICES_TYPE =
+        new TypeReference<Map<String, List<Map<String, Object>>>>() {
+        };
+
+    private final Path file;
+    private final String serviceName;
+
+    VcapServicesFileSource(Path file, String serviceName) {
+        this.file = file;
+        this.serviceName = serviceName;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CfCredentials read() {
+        final Map<String, List<Map<String, Object>>> services;
+        try (final InputStream inputStream = Files.newInputStream(file)) {
+            services = OBJECT_MAPPER.readValue(inputStream, VCAP_SERVICES_TYPE);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read VCAP_SERVICES from " + file, e);
+        }
+        for (List<Map<String, Object>> instances : services.values()) {
+            for (Map<String, Object> instance : instances) {
+                if (serviceName.equalsIgnoreCase(String.valueOf(instance.get("name")))) {
+                    return new CfCredentials((Map<String, Object>) instance.get("credentials"));
+                }
+            }
+        }
+        throw new RuntimeException("Service " + serviceName + " not found in " + file);
+    }
+}
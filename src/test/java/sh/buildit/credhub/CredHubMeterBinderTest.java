@@ -0,0 +1,121 @@
+package sh.buildit.credhub;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pivotal.cfenv.core.CfCredentials;
+import org.junit.jupiter.api.Test;
+import org.junitpioneer.jupiter.SetEnvironmentVariable;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CredHubMeterBinderTest {
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "metrics-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_VALIDATE_ENV_VAR, value = "true")
+    public void publishesValuesRecordedBeforeBinding() {
+        // Stores already written in this JVM are reused without a decode or write, so use a fresh key store
+        final Map<String, Object> credentialsData = TestStores.credentialsData();
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION, TestCertificates.encode(TestCertificates.keyStore(
+            TestStores.TYPE, TestStores.PASSWORD, "client", TestCertificates.selfSignedCa("Metrics CA")), TestStores.PASSWORD));
+        new CredHubKafkaEnvProcessor().process(new CfCredentials(credentialsData), new HashMap<>());
+
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        new CredHubMeterBinder().bindTo(registry);
+
+        for (String phase : new String[]{"lookup", "decode", "write", "validate"}) {
+            final Timer timer = registry.find(CredHubMeterBinder.PHASE_TIMER)
+                .tags("service", "metrics-credhub", "store", CredHubKafkaEnvProcessor.KEY_STORE_LOCATION, "phase", phase)
+                .timer();
+            assertNotNull(timer, phase);
+            assertEquals(1, timer.count(), phase);
+        }
+        assertEquals(TestStores.read(TestStores.TRUST_STORE).length, gauge(registry, CredHubMeterBinder.SIZE_GAUGE,
+            CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION).value());
+        assertEquals(2, gauge(registry, CredHubMeterBinder.ENTRIES_GAUGE,
+            CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION).value());
+        assertEquals(1, gauge(registry, CredHubMeterBinder.ENTRIES_GAUGE,
+            CredHubKafkaEnvProcessor.KEY_STORE_LOCATION).value());
+        assertTrue(gauge(registry, CredHubMeterBinder.NOT_AFTER_GAUGE,
+            CredHubKafkaEnvProcessor.KEY_STORE_LOCATION).value() > Instant.now().getEpochSecond());
+    }
+
+    @Test
+    public void forwardsValuesRecordedAfterBinding() {
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        new CredHubMeterBinder().bindTo(registry);
+
+        final StoreMetrics.Recorder recorder = StoreMetrics.recorder("late-credhub", "late-store");
+        recorder.record(StoreMetrics.Phase.DECODE, TimeUnit.MILLISECONDS.toNanos(5));
+        recorder.parsed(KeyStores.load(TestStores.encoded(TestStores.KEY_STORE), TestStores.PASSWORD, TestStores.TYPE));
+
+        final Timer timer = registry.find(CredHubMeterBinder.PHASE_TIMER).tags("service", "late-credhub", "phase", "decode").timer();
+        assertNotNull(timer);
+        assertEquals(5, timer.totalTime(TimeUnit.MILLISECONDS));
+        final Gauge entries = registry.find(CredHubMeterBinder.ENTRIES_GAUGE).tags("service", "late-credhub").gauge();
+        assertNotNull(entries);
+        assertEquals(1, entries.value());
+        assertTrue(Double.isNaN(registry.find(CredHubMeterBinder.SIZE_GAUGE).tags("service", "late-credhub").gauge().value()));
+    }
+
+    @Test
+    public void timesDecodeAndLoadSeparately() {
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        new CredHubMeterBinder().bindTo(registry);
+
+        StoreMaterializer.parse(StoreMetrics.recorder("parse-credhub", CredHubKafkaEnvProcessor.KEY_STORE_LOCATION),
+            TestStores.credentials(), new StoreKeys(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION,
+                CredHubKafkaEnvProcessor.KEY_STORE_PASSWORD, CredHubKafkaEnvProcessor.KEY_STORE_TYPE));
+
+        for (String phase : new String[]{"lookup", "decode", "load"}) {
+            final Timer timer = registry.find(CredHubMeterBinder.PHASE_TIMER).tags("service", "parse-credhub", "phase", phase).timer();
+            assertNotNull(timer, phase);
+            assertEquals(1, timer.count(), phase);
+        }
+    }
+
+    @Test
+    public void stopsForwardingToClosedRegistry() {
+        final int listeners = StoreMetrics.listeners();
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        new CredHubMeterBinder().bindTo(registry);
+        assertEquals(listeners + 1, StoreMetrics.listeners());
+
+        registry.close();
+        StoreMetrics.recorder("closed-credhub", "closed-store").record(StoreMetrics.Phase.DECODE, 1);
+
+        assertEquals(listeners, StoreMetrics.listeners());
+        assertNull(registry.find(CredHubMeterBinder.PHASE_TIMER).tags("service", "closed-credhub").timer());
+    }
+
+    @Test
+    public void closingBinderUnsubscribesItsRegistries() {
+        final int listeners = StoreMetrics.listeners();
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        final CredHubMeterBinder binder = new CredHubMeterBinder();
+        binder.bindTo(registry);
+        binder.bindTo(new SimpleMeterRegistry());
+
+        binder.close();
+        StoreMetrics.recorder("unbound-credhub", "unbound-store").record(StoreMetrics.Phase.DECODE, 1);
+
+        assertEquals(listeners, StoreMetrics.listeners());
+        assertNull(registry.find(CredHubMeterBinder.PHASE_TIMER).tags("service", "unbound-credhub").timer());
+    }
+
+    private static Gauge gauge(MeterRegistry registry, String name, String store) {
+        final Gauge gauge = registry.find(name).tags("service", "metrics-credhub", "store", store).gauge();
+        assertNotNull(gauge, name + " " + store);
+        return gauge;
+    }
+}
@@ -0,0 +1,165 @@
+package sh.buildit.credhub;
+
+import org.apache.kafka.common.config.SslConfigs;
+import org.apache.kafka.common.network.Mode;
+import org.apache.kafka.common.security.ssl.SslFactory;
+import org.junit.jupiter.api.Test;
+import org.junitpioneer.jupiter.SetEnvironmentVariable;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CredHubSslEngineFactoryTest {
+    private static final int RECONNECTS = 20;
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> process() {
+        final Map<String, Object> properties = new HashMap<>();
+        new CredHubKafkaEnvProcessor().process(TestStores.credentials(), properties);
+        return (Map<String, Object>) properties.get(CredHubKafkaEnvProcessor.KAFKA_PROPERTIES_PROPERTY);
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "shared-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    public void processorWiresFactory() {
+        final Map<String, Object> kafkaProperties = process();
+        assertEquals(CredHubSslEngineFactory.class.getName(), kafkaProperties.get(CredHubKafkaEnvProcessor.ENGINE_FACTORY_CLASS_PROPERTY));
+        assertEquals("shared-credhub", kafkaProperties.get(CredHubSslEngineFactory.MATERIAL_CONFIG));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "shared-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    public void sharesContextAcrossFactories() {
+        final Map<String, Object> kafkaProperties = process();
+        final CredHubSslEngineFactory first = new CredHubSslEngineFactory();
+        first.configure(kafkaProperties);
+        final CredHubSslEngineFactory second = new CredHubSslEngineFactory();
+        second.configure(kafkaProperties);
+
+        assertSame(first.material().sslContext(), second.material().sslContext());
+        assertSame(first.keystore(), second.keystore());
+        assertTrue(first.truststore() != null);
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "shared-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    public void reprocessingSameContentKeepsContext() {
+        process();
+        final SslMaterial before = SslMaterial.get("shared-credhub");
+        process();
+        assertSame(before, SslMaterial.get("shared-credhub"));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "shared-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    public void createsEnginesThroughKafka() {
+        final Map<String, Object> kafkaProperties = process();
+        final Map<String, Object> configs = new HashMap<>(kafkaProperties);
+        configs.put(SslConfigs.SSL_ENGINE_FACTORY_CLASS_CONFIG, CredHubSslEngineFactory.class);
+        final SslFactory sslFactory = new SslFactory(Mode.CLIENT);
+        sslFactory.configure(configs);
+
+        final SSLEngine sslEngine = sslFactory.createSslEngine("localhost", 9093);
+        assertTrue(sslEngine.getUseClientMode());
+        assertTrue(sslFactory.sslEngineFactory() instanceof CredHubSslEngineFactory);
+        sslFactory.close();
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "shared-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    public void rebuildsOnlyForOtherMaterial() {
+        final Map<String, Object> kafkaProperties = process();
+        final CredHubSslEngineFactory factory = new CredHubSslEngineFactory();
+        factory.configure(kafkaProperties);
+        assertFalse(factory.shouldBeRebuilt(new HashMap<>(kafkaProperties)));
+
+        final Map<String, Object> other = new HashMap<>(kafkaProperties);
+        other.put(CredHubSslEngineFactory.MATERIAL_CONFIG, "other-credhub");
+        assertTrue(factory.shouldBeRebuilt(other));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "resuming-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    public void reconnectsResumeSharedSessions() throws Exception {
+        final Map<String, Object> kafkaProperties = process();
+        try (final TestBroker broker = new TestBroker()) {
+            for (int i = 0; i < RECONNECTS; i++) {
+                final CredHubSslEngineFactory factory = new CredHubSslEngineFactory();
+                factory.configure(kafkaProperties);
+                broker.exchange(factory.createClientSslEngine("localhost", broker.port(), "https"));
+            }
+
+            assertEquals(RECONNECTS, broker.connections());
+            assertEquals(1, broker.fullHandshakes());
+            assertEquals(RECONNECTS - 1, resumptions(broker));
+        }
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "resuming-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    public void otherMaterialDoesNotResumeSessions() throws Exception {
+        final Map<String, Object> kafkaProperties = process();
+        SslMaterial.register("other-resuming-credhub", "digest", () -> SslMaterial.of(
+            KeyStores.load(TestStores.encoded(TestStores.KEY_STORE), TestStores.PASSWORD, TestStores.TYPE),
+            TestStores.PASSWORD,
+            KeyStores.load(TestStores.encoded(TestStores.TRUST_STORE), TestStores.PASSWORD, TestStores.TYPE)));
+        final Map<String, Object> otherProperties = new HashMap<>(kafkaProperties);
+        otherProperties.put(CredHubSslEngineFactory.MATERIAL_CONFIG, "other-resuming-credhub");
+        try (final TestBroker broker = new TestBroker()) {
+            for (int i = 0; i < RECONNECTS; i++) {
+                final CredHubSslEngineFactory factory = new CredHubSslEngineFactory();
+                factory.configure(i % 2 == 0 ? kafkaProperties : otherProperties);
+                broker.exchange(factory.createClientSslEngine("localhost", broker.port(), "https"));
+            }
+
+            assertEquals(2, broker.fullHandshakes());
+            assertEquals(RECONNECTS - 2, resumptions(broker));
+        }
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "session-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_SSL_SESSION_CACHE_SIZE_ENV_VAR, value = "500")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_SSL_SESSION_TIMEOUT_ENV_VAR, value = "PT2H")
+    public void tunesSessionCache() {
+        process();
+        final SSLContext sslContext = SslMaterial.get("session-credhub").sslContext();
+        assertEquals(500, sslContext.getClientSessionContext().getSessionCacheSize());
+        assertEquals(7200, sslContext.getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "session-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_SSL_SESSION_CACHE_SIZE_ENV_VAR, value = "-1")
+    public void rejectsNegativeSessionCacheSize() {
+        assertThrows(IllegalArgumentException.class, CredHubSslEngineFactoryTest::process);
+    }
+
+    @Test
+    public void rejectsUnknownMaterial() {
+        final Map<String, Object> configs = new HashMap<>();
+        configs.put(CredHubSslEngineFactory.MATERIAL_CONFIG, "unknown-credhub");
+        assertThrows(IllegalStateException.class, () -> new CredHubSslEngineFactory().configure(configs));
+    }
+
+    private static int resumptions(TestBroker broker) {
+        return broker.connections() - broker.fullHandshakes();
+    }
+}
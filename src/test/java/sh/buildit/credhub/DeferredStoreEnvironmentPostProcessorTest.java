@@ -0,0 +1,97 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+import org.junit.jupiter.api.Test;
+import org.junitpioneer.jupiter.SetEnvironmentVariable;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeferredStoreEnvironmentPostProcessorTest {
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "my-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_ASYNC_ENV_VAR, value = "true")
+    public void resolvesDeferredStores() {
+        final Map<String, Object> properties = new HashMap<>();
+        new CredHubKafkaEnvProcessor().process(TestStores.credentials(), properties);
+
+        final String placeholder = properties.get(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_PROPERTY).toString();
+        assertTrue(placeholder.startsWith("${" + DeferredStores.PROPERTY_PREFIX));
+        assertEquals(TestStores.PASSWORD, properties.get(CredHubKafkaEnvProcessor.KEY_STORE_PASSWORD_PROPERTY));
+
+        final StandardEnvironment environment = environment(properties);
+        final String keyStoreLocation = environment.getProperty(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_PROPERTY);
+        final String trustStoreLocation = environment.getProperty(CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION_PROPERTY);
+        assertTrue(keyStoreLocation.startsWith("file://"));
+        assertTrue(Files.isRegularFile(Paths.get(keyStoreLocation.substring("file://".length()))));
+        assertTrue(Files.isRegularFile(Paths.get(trustStoreLocation.substring("file://".length()))));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "my-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_ASYNC_ENV_VAR, value = "true")
+    public void surfacesFailuresOnRead() {
+        final Map<String, Object> credentialsData = TestStores.credentialsData();
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_PASSWORD, "wrong-password");
+        final Map<String, Object> properties = new HashMap<>();
+        new CredHubKafkaEnvProcessor().process(new CfCredentials(credentialsData), properties);
+
+        final StandardEnvironment environment = environment(properties);
+        assertThrows(RuntimeException.class, () -> environment.getProperty(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_PROPERTY));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "my-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_LAZY_ENV_VAR, value = "true")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_CACHE_DIR_ENV_VAR, value = "target/lazy-store-cache")
+    public void materializesLazyStoresOnFirstRead() throws Exception {
+        final Path cache = Paths.get("target", "lazy-store-cache");
+        if (Files.exists(cache)) {
+            try (Stream<Path> files = Files.walk(cache)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        final Map<String, Object> properties = new HashMap<>();
+        new CredHubKafkaEnvProcessor().process(TestStores.credentials(), properties);
+
+        final String keyStoreName = deferredName(properties.get(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_PROPERTY));
+        final String trustStoreName = deferredName(properties.get(CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION_PROPERTY));
+        assertFalse(DeferredStores.isDone(keyStoreName));
+        assertFalse(DeferredStores.isDone(trustStoreName));
+        assertFalse(Files.exists(cache));
+
+        final StandardEnvironment environment = environment(properties);
+        final String keyStoreLocation = environment.getProperty(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_PROPERTY);
+        assertTrue(Files.isRegularFile(Paths.get(keyStoreLocation.substring("file://".length()))));
+        assertTrue(DeferredStores.isDone(keyStoreName));
+        assertFalse(DeferredStores.isDone(trustStoreName));
+        assertEquals(keyStoreLocation, environment.getProperty(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION_PROPERTY));
+    }
+
+    private static String deferredName(Object placeholder) {
+        final String value = placeholder.toString();
+        assertTrue(value.startsWith("${" + DeferredStores.PROPERTY_PREFIX));
+        return value.substring(("${" + DeferredStores.PROPERTY_PREFIX).length(), value.length() - 1);
+    }
+
+    private static StandardEnvironment environment(Map<String, Object> properties) {
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource(CredHubKafkaEnvProcessor.class.getSimpleName(), properties));
+        new DeferredStoreEnvironmentPostProcessor().postProcessEnvironment(environment, null);
+        assertTrue(environment.getPropertySources().contains(DeferredStorePropertySource.NAME));
+        return environment;
+    }
+}
@@ -0,0 +1,62 @@
+package sh.buildit.credhub;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DeferredStoresTest {
+
+    @Test
+    public void retriesFailedBackgroundStore() {
+        final String placeholder = DeferredStores.submit("failing-background-store", () -> {
+            throw new IOException("No space left on device");
+        });
+        final RuntimeException e = assertThrows(RuntimeException.class, () -> DeferredStores.resolve("failing-background-store"));
+        assertEquals("No space left on device", e.getCause().getMessage());
+
+        assertEquals(placeholder, DeferredStores.submit("failing-background-store", () -> "file:///store.jks"));
+        assertEquals("file:///store.jks", DeferredStores.resolve("failing-background-store"));
+    }
+
+    @Test
+    public void keepsSuccessfulBackgroundStore() {
+        DeferredStores.submit("successful-background-store", () -> "file:///first.jks");
+        assertEquals("file:///first.jks", DeferredStores.resolve("successful-background-store"));
+
+        DeferredStores.submit("successful-background-store", () -> "file:///second.jks");
+        assertSame("file:///first.jks", DeferredStores.resolve("successful-background-store"));
+    }
+
+    @Test
+    public void retriesFailedLazyStoreOnNextRead() {
+        final AtomicInteger attempts = new AtomicInteger();
+        final String placeholder = DeferredStores.defer("failing-lazy-store", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("Input/output error");
+            }
+            return "file:///store.jks";
+        });
+        assertThrows(RuntimeException.class, () -> DeferredStores.resolve("failing-lazy-store"));
+
+        assertEquals("file:///store.jks", DeferredStores.resolve("failing-lazy-store"));
+        assertEquals(2, attempts.get());
+        assertEquals(placeholder, DeferredStores.defer("failing-lazy-store", () -> "file:///other.jks"));
+        assertEquals("file:///store.jks", DeferredStores.resolve("failing-lazy-store"));
+    }
+
+    @Test
+    public void replacesFailedLazyStoreOnNextPass() {
+        DeferredStores.defer("replaced-lazy-store", () -> {
+            throw new IOException("Input/output error");
+        });
+        assertThrows(RuntimeException.class, () -> DeferredStores.resolve("replaced-lazy-store"));
+
+        DeferredStores.defer("replaced-lazy-store", () -> "file:///store.jks");
+        assertEquals("file:///store.jks", DeferredStores.resolve("replaced-lazy-store"));
+    }
+}
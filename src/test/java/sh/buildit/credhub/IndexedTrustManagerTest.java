@@ -0,0 +1,106 @@
+package sh.buildit.credhub;
+
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IndexedTrustManagerTest {
+    private static final String AUTH_TYPE = "ECDHE_ECDSA";
+
+    @Test
+    public void acceptsChainIssuedByOneOfManyAnchors() throws Exception {
+        final TestCertificates.Issued root = TestCertificates.selfSignedCa("Indexed Root");
+        final TestCertificates.Issued intermediate = TestCertificates.issue("Indexed Intermediate", root, true);
+        final TestCertificates.Issued leaf = TestCertificates.issue("indexed.example", intermediate, false);
+        final List<X509Certificate> anchors = anchors(TestCertificates.trustStore("JKS", 500));
+        anchors.add(root.certificate);
+        final IndexedTrustManager trustManager = new IndexedTrustManager(anchors);
+
+        final X509Certificate[] chain = {leaf.certificate, intermediate.certificate};
+        trustManager.checkServerTrusted(chain, AUTH_TYPE);
+        trustManager.checkClientTrusted(chain, AUTH_TYPE);
+        assertEquals(Collections.singletonList(root.certificate), trustManager.anchorsFor(chain));
+    }
+
+    @Test
+    public void acceptsPinnedLeafIssuedByUntrustedCa() throws Exception {
+        final TestCertificates.Issued untrusted = TestCertificates.selfSignedCa("Pinning Root");
+        final TestCertificates.Issued leaf = TestCertificates.issue("pinned.example", untrusted, false);
+        final List<X509Certificate> anchors = anchors(TestCertificates.trustStore("JKS", 10));
+        anchors.add(leaf.certificate);
+        final IndexedTrustManager trustManager = new IndexedTrustManager(anchors);
+
+        final X509Certificate[] chain = {leaf.certificate, untrusted.certificate};
+        trustManager.checkServerTrusted(chain, AUTH_TYPE);
+        trustManager.checkServerTrusted(new X509Certificate[]{leaf.certificate}, AUTH_TYPE);
+        assertEquals(Collections.singletonList(leaf.certificate), trustManager.anchorsFor(chain));
+    }
+
+    @Test
+    public void rejectsChainWithoutAnchor() {
+        final TestCertificates.Issued root = TestCertificates.selfSignedCa("Untrusted Root");
+        final TestCertificates.Issued leaf = TestCertificates.issue("untrusted.example", root, false);
+        final IndexedTrustManager trustManager = new IndexedTrustManager(anchors(TestCertificates.trustStore("JKS", 10)));
+
+        assertThrows(CertificateException.class,
+            () -> trustManager.checkServerTrusted(new X509Certificate[]{leaf.certificate}, AUTH_TYPE));
+    }
+
+    @Test
+    public void rejectsChainSignedByImpostorWithSameName() {
+        final TestCertificates.Issued root = TestCertificates.selfSignedCa("Impostor Root");
+        final TestCertificates.Issued impostor = TestCertificates.selfSignedCa("Impostor Root");
+        final TestCertificates.Issued leaf = TestCertificates.issue("impostor.example", impostor, false);
+        final IndexedTrustManager trustManager = new IndexedTrustManager(Collections.singletonList(root.certificate));
+
+        assertThrows(CertificateException.class,
+            () -> trustManager.checkServerTrusted(new X509Certificate[]{leaf.certificate}, AUTH_TYPE));
+    }
+
+    @Test
+    public void removesDuplicateAnchors() {
+        final List<X509Certificate> anchors = anchors(TestCertificates.trustStore("JKS", 3));
+        final List<X509Certificate> duplicated = new ArrayList<>(anchors);
+        duplicated.addAll(anchors);
+
+        assertEquals(3, new IndexedTrustManager(duplicated).getAcceptedIssuers().length);
+    }
+
+    @Test
+    public void mergesJvmTrust() throws Exception {
+        final KeyStore trustStore = KeyStores.load(TestStores.encoded(TestStores.TRUST_STORE), TestStores.PASSWORD, TestStores.TYPE);
+        final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init((KeyStore) null);
+        final List<X509Certificate> jvmAnchors = Arrays.asList(((X509TrustManager) trustManagerFactory.getTrustManagers()[0]).getAcceptedIssuers());
+
+        final List<X509Certificate> merged = Arrays.asList(IndexedTrustManager.of(trustStore, true).getAcceptedIssuers());
+
+        assertEquals(trustStore.size() + jvmAnchors.size(), merged.size());
+        assertTrue(merged.containsAll(jvmAnchors));
+        assertEquals(trustStore.size(), IndexedTrustManager.of(trustStore, false).getAcceptedIssuers().length);
+    }
+
+    private static List<X509Certificate> anchors(KeyStore trustStore) {
+        try {
+            final List<X509Certificate> anchors = new ArrayList<>();
+            for (String alias : Collections.list(trustStore.aliases())) {
+                anchors.add((X509Certificate) trustStore.getCertificate(alias));
+            }
+            return anchors;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package sh.buildit.credhub;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class KeyStoresTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void decodeToMatchesBulkDecode() throws Exception {
+        final byte[] content = new byte[100_003];
+        new Random(42).nextBytes(content);
+        final Path target = directory.resolve("store.jks");
+
+        final long written = KeyStores.decodeTo(Base64.getEncoder().encodeToString(content), target);
+
+        assertEquals(content.length, written);
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void decodeToRejectsInvalidContent() {
+        assertThrows(Exception.class, () -> KeyStores.decodeTo("not*base64", directory.resolve("store.jks")));
+    }
+
+    @Test
+    public void rejectsNonAsciiCharacters() {
+        final String encoded = TestStores.encoded(TestStores.TRUST_STORE);
+        // U+0141 truncated to a byte reads as the 'A' it replaces, so the store would still decode and load
+        final int index = encoded.indexOf('A');
+        final String tampered = encoded.substring(0, index) + '\u0141' + encoded.substring(index + 1);
+
+        final IOException e = assertThrows(IOException.class, () -> KeyStores.decodeTo(tampered, directory.resolve("store.jks")));
+        assertTrue(e.getMessage().contains("U+0141"));
+        assertThrows(RuntimeException.class, () -> KeyStores.load(tampered, TestStores.PASSWORD, TestStores.TYPE));
+    }
+
+    @Test
+    public void loadsStoreFromStream() throws Exception {
+        final KeyStore keyStore = KeyStores.load(TestStores.encoded(TestStores.TRUST_STORE), TestStores.PASSWORD, TestStores.TYPE);
+        assertEquals(2, keyStore.size());
+    }
+
+    @Test
+    public void decodeToAllocationIsBounded() throws Exception {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        final byte[] content = new byte[16 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        final String encoded = Base64.getEncoder().encodeToString(content);
+        final Path target = directory.resolve("store.jks");
+        final long threadId = Thread.currentThread().getId();
+        // Warm up so class loading does not count against the measured run
+        KeyStores.decodeTo(encoded, target);
+
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        KeyStores.decodeTo(encoded, target);
+        final long streamed = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(streamed < content.length / 16, "Streaming decode allocated " + streamed + " bytes");
+        assertEquals(content.length, Files.size(target));
+    }
+}
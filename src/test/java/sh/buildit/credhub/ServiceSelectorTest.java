@@ -0,0 +1,99 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfService;
+import org.junit.jupiter.api.Test;
+import org.junitpioneer.jupiter.ClearEnvironmentVariable;
+import org.junitpioneer.jupiter.SetEnvironmentVariable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ServiceSelectorTest {
+
+    @Test
+    public void matchesNameIgnoringCaseAndWhitespace() {
+        final ServiceSelector selector = new ServiceSelector(" My-CredHub ", ServiceSelector.DEFAULT_TAG, null);
+
+        assertTrue(selector.accept(service("my-credhub", "credhub", "CredHub")));
+        assertFalse(selector.accept(service("my-credhub", "credhub", "kafka")));
+        assertFalse(selector.accept(service("other-credhub", "credhub", "credhub")));
+        assertEquals("my-credhub", selector.serviceName());
+    }
+
+    @Test
+    public void matchesGlobs() {
+        final ServiceSelector selector = new ServiceSelector("legacy, kafka-*-credhub,audit-?", "credhub", null);
+
+        assertTrue(selector.accept(service("kafka-payments-credhub", null, "credhub")));
+        assertTrue(selector.accept(service("audit-1", null, "credhub")));
+        assertTrue(selector.accept(service("LEGACY", null, "credhub")));
+        assertFalse(selector.accept(service("audit-12", null, "credhub")));
+        assertFalse(selector.accept(service("kafka.payments-credhub", null, "credhub")));
+    }
+
+    @Test
+    public void matchesLabel() {
+        final ServiceSelector selector = new ServiceSelector(null, null, "credhub");
+
+        assertFalse(selector.accept(service("mysql", "p.mysql", "mysql")));
+        assertTrue(selector.accept(service("kafka-credhub", "credhub", "anything")));
+        assertEquals("kafka-credhub", selector.serviceName());
+    }
+
+    @Test
+    public void matchesTagGlob() {
+        final ServiceSelector selector = new ServiceSelector("kafka-credhub", "credhub-*", null);
+
+        assertTrue(selector.accept(service("kafka-credhub", null, "credhub-kafka")));
+        assertFalse(selector.accept(service("kafka-credhub", null, "credhub")));
+    }
+
+    @Test
+    public void namesAcceptedService() {
+        final ServiceSelector selector = new ServiceSelector("kafka-*", ServiceSelector.DEFAULT_TAG, null);
+        assertThrows(IllegalStateException.class, selector::serviceName);
+
+        selector.accept(service("kafka-payments", null, "credhub"));
+
+        assertEquals("kafka-payments", selector.serviceName());
+    }
+
+    @Test
+    @ClearEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR)
+    @ClearEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_SERVICE_LABEL_ENV_VAR)
+    public void rejectsMissingSelection() {
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class, ServiceSelector::fromEnvironment);
+        assertTrue(e.getMessage().contains(CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = " ")
+    public void rejectsBlankName() {
+        assertThrows(IllegalArgumentException.class, ServiceSelector::fromEnvironment);
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_SERVICE_LABEL_ENV_VAR, value = "credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_SERVICE_TAG_ENV_VAR, value = "")
+    public void readsLabelWithoutTag() {
+        final ServiceSelector selector = ServiceSelector.fromEnvironment();
+
+        assertTrue(selector.accept(service("untagged", "credhub", null)));
+    }
+
+    private static CfService service(String name, String label, String tag) {
+        final Map<String, Object> serviceData = new HashMap<>();
+        serviceData.put("name", name);
+        if (label != null) {
+            serviceData.put("label", label);
+        }
+        serviceData.put("tags", tag == null ? Arrays.asList() : Arrays.asList(tag));
+        return new CfService(serviceData);
+    }
+}
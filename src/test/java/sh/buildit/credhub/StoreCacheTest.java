@@ -0,0 +1,126 @@
+package sh.buildit.credhub;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StoreCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void namesEntriesByDigest() throws Exception {
+        final StoreCache storeCache = new StoreCache(directory, Duration.ofDays(1), 4);
+        final String encoded = encode("store-one");
+
+        final Path path = storeCache.materialize(encoded, "JKS");
+
+        assertEquals(directory.resolve(KeyStores.digest(encoded) + ".jks"), path);
+        assertArrayEquals("store-one".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(path));
+    }
+
+    @Test
+    public void reusesExistingEntryWithoutRewriting() throws Exception {
+        final StoreCache storeCache = new StoreCache(directory, Duration.ofDays(1), 4);
+        final String encoded = encode("store-one");
+        final Path first = storeCache.materialize(encoded, "JKS");
+        Files.write(first, "marker".getBytes(StandardCharsets.UTF_8));
+
+        final Path second = storeCache.materialize(encoded, "JKS");
+
+        assertEquals(first, second);
+        assertArrayEquals("marker".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(second));
+    }
+
+    @Test
+    public void namesEntriesByType() throws Exception {
+        final StoreCache storeCache = new StoreCache(directory, Duration.ofDays(1), 4);
+
+        assertTrue(storeCache.materialize(encode("store-one"), "pkcs12").toString().endsWith(".p12"));
+        assertTrue(storeCache.materialize(encode("store-two"), "PEM").toString().endsWith(".pem"));
+        assertTrue(storeCache.materialize(encode("store-three"), "JKS").toString().endsWith(".jks"));
+    }
+
+    @Test
+    public void evictsByCount() throws Exception {
+        final StoreCache storeCache = new StoreCache(directory, Duration.ofDays(1), 3);
+        final Path oldest = foreign("oldest.jks", Duration.ofMinutes(2));
+        final Path middle = foreign("middle.p12", Duration.ofMinutes(1));
+        final Path newest = foreign("newest.pem", Duration.ZERO);
+
+        final Path written = materialize(storeCache, "store-one");
+
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(middle));
+        assertTrue(Files.exists(newest));
+        assertTrue(Files.exists(written));
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void neverEvictsStoresInUse() throws Exception {
+        final StoreCache storeCache = new StoreCache(directory, Duration.ofDays(1), 1);
+        final Path trustStore = materialize(storeCache, "trust-store");
+        Files.setLastModifiedTime(trustStore, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        final Path other = foreign("other.jks", Duration.ZERO);
+
+        final Path keyStore = materialize(storeCache, "key-store");
+
+        assertTrue(Files.exists(trustStore));
+        assertTrue(Files.exists(keyStore));
+        assertFalse(Files.exists(other));
+    }
+
+    @Test
+    public void evictsByAge() throws Exception {
+        final StoreCache storeCache = new StoreCache(directory, Duration.ofHours(1), 8);
+        final Path stale = foreign("stale.jks", Duration.ofHours(2));
+        final Path leftover = foreign("leftover.tmp", Duration.ofHours(2));
+        final Path unrelated = foreign("unrelated.txt", Duration.ofHours(2));
+
+        final Path fresh = materialize(storeCache, "store-two");
+
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(leftover));
+        assertTrue(Files.exists(unrelated));
+        assertTrue(Files.exists(fresh));
+    }
+
+    /**
+     * A file another JVM left in the cache, last modified {@code age} ago.
+     */
+    private Path foreign(String name, Duration age) throws Exception {
+        final Path path = Files.write(directory.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+        return path;
+    }
+
+    private static Path materialize(StoreCache storeCache, String content) throws Exception {
+        final String encoded = encode(content);
+        return storeCache.materialize(encoded, "JKS");
+    }
+
+    private long count() throws Exception {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static String encode(String content) {
+        return Base64.getEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,99 @@
+package sh.buildit.credhub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.cfenv.core.CfCredentials;
+import org.junit.jupiter.api.Test;
+import org.junitpioneer.jupiter.SetEnvironmentVariable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StoreRotatorTest {
+    private static final Path VCAP_FILE = Paths.get("target", "rotation", "vcap-services.json");
+
+    @Test
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ENV_VAR, value = "rotating-credhub")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_STORE_MODE_ENV_VAR, value = "shared")
+    @SetEnvironmentVariable(key = CredHubKafkaEnvProcessor.CREDHUB_ROTATION_VCAP_FILE_ENV_VAR, value = "target/rotation/vcap-services.json")
+    @SuppressWarnings("unchecked")
+    public void swapsMaterialWhenSourceChanges() throws Exception {
+        writeVcapServices("rotating-credhub", TestStores.credentialsData());
+        final Map<String, Object> properties = new HashMap<>();
+        new CredHubKafkaEnvProcessor().process(TestStores.credentials(), properties);
+        final CredHubSslEngineFactory factory = new CredHubSslEngineFactory();
+        factory.configure((Map<String, Object>) properties.get(CredHubKafkaEnvProcessor.KAFKA_PROPERTIES_PROPERTY));
+        final SslMaterial before = factory.material();
+
+        final StoreRotator rotator = StoreRotator.get("rotating-credhub");
+        assertFalse(rotator.poll());
+        assertSame(before, factory.material());
+
+        final Map<String, Object> rotated = TestStores.credentialsData();
+        rotated.put(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION, TestStores.encoded(TestStores.BROKER_KEY_STORE));
+        writeVcapServices("rotating-credhub", rotated);
+
+        assertTrue(rotator.poll());
+        assertNotSame(before, factory.material());
+        assertNotSame(before.sslContext(), factory.material().sslContext());
+        assertTrue(factory.keystore().containsAlias("broker"));
+    }
+
+    @Test
+    public void pollsSoonerNearExpiry() {
+        final Consumer<CfCredentials> registrar = credentials -> SslMaterial.register("expiring-credhub", "digest", () ->
+            SslMaterial.of(
+                KeyStores.load(TestStores.encoded(TestStores.KEY_STORE), TestStores.PASSWORD, TestStores.TYPE),
+                TestStores.PASSWORD,
+                KeyStores.load(TestStores.encoded(TestStores.TRUST_STORE), TestStores.PASSWORD, TestStores.TYPE)));
+        registrar.accept(TestStores.credentials());
+        final SslMaterial material = SslMaterial.get("expiring-credhub");
+        final Duration interval = Duration.ofMinutes(5);
+        final Duration refreshAhead = Duration.ofDays(1);
+
+        final StoreRotator farFromExpiry = new StoreRotator("expiring-credhub", TestStores::credentials, registrar,
+            interval, refreshAhead, Clock.fixed(material.notAfter().minus(Duration.ofDays(30)), ZoneOffset.UTC));
+        assertEquals(interval, farFromExpiry.nextDelay());
+
+        final StoreRotator justBeforeWindow = new StoreRotator("expiring-credhub", TestStores::credentials, registrar,
+            interval, refreshAhead, Clock.fixed(material.notAfter().minus(refreshAhead).minusSeconds(10), ZoneOffset.UTC));
+        assertEquals(Duration.ofSeconds(10), justBeforeWindow.nextDelay());
+
+        final StoreRotator insideWindow = new StoreRotator("expiring-credhub", TestStores::credentials, registrar,
+            interval, refreshAhead, Clock.fixed(material.notAfter().minus(Duration.ofHours(1)), ZoneOffset.UTC));
+        assertEquals(StoreRotator.EXPIRING_POLL_INTERVAL, insideWindow.nextDelay());
+    }
+
+    @Test
+    public void readsCredentialsFromVcapServicesFile() throws Exception {
+        final Map<String, Object> credentials = Collections.singletonMap("key-store-type", "JKS");
+        writeVcapServices("file-credhub", credentials);
+
+        final CfCredentials read = new VcapServicesFileSource(VCAP_FILE, "FILE-CREDHUB").read();
+
+        assertEquals("JKS", read.getMap().get("key-store-type"));
+    }
+
+    private static void writeVcapServices(String name, Map<String, Object> credentials) throws Exception {
+        final Map<String, Object> service = new HashMap<>();
+        service.put("name", name);
+        service.put("tags", Collections.singletonList("credhub"));
+        service.put("credentials", credentials);
+        Files.createDirectories(VCAP_FILE.getParent());
+        new ObjectMapper().writeValue(VCAP_FILE.toFile(),
+            Collections.singletonMap("credhub", Collections.singletonList(service)));
+    }
+}
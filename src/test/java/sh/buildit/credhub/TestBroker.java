@@ -0,0 +1,224 @@
+package sh.buildit.credhub;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local TLS echo server standing in for a Kafka broker. It presents {@link TestStores#BROKER_KEY_STORE}, requires
+ * a client certificate issued by the test CA, and counts full handshakes, i.e. ones that were not resumed.
+ */
+final class TestBroker implements AutoCloseable {
+    private final SSLServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "test-broker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger fullHandshakes = new AtomicInteger();
+
+    TestBroker() throws Exception {
+        final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(KeyStores.load(TestStores.encoded(TestStores.BROKER_KEY_STORE), TestStores.PASSWORD, TestStores.TYPE),
+            TestStores.PASSWORD.toCharArray());
+        final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(KeyStores.load(TestStores.encoded(TestStores.TRUST_STORE), TestStores.PASSWORD, TestStores.TYPE));
+        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(new KeyManager[]{new CountingKeyManager((X509ExtendedKeyManager) keyManagerFactory.getKeyManagers()[0])},
+            trustManagerFactory.getTrustManagers(), null);
+        serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+            .createServerSocket(0, 512, InetAddress.getLoopbackAddress());
+        serverSocket.setNeedClientAuth(true);
+        executor.submit(this::accept);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    int fullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Handshakes {@code engine} with the broker over a fresh connection and echoes one byte through it.
+     */
+    void exchange(SSLEngine engine) throws IOException {
+        try (final SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port()))) {
+            // Handshake messages are small writes, which Nagle's algorithm would hold back for a delayed ACK
+            channel.socket().setTcpNoDelay(true);
+            final ByteBuffer appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            final ByteBuffer netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            final ByteBuffer netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            engine.beginHandshake();
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            while (status != SSLEngineResult.HandshakeStatus.FINISHED
+                && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    status = wrap(engine, channel, ByteBuffer.allocate(0), netOut);
+                } else if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runTasks(engine);
+                    status = engine.getHandshakeStatus();
+                } else {
+                    status = unwrap(engine, channel, netIn, appIn).getHandshakeStatus();
+                }
+            }
+
+            wrap(engine, channel, ByteBuffer.wrap(new byte[]{42}), netOut);
+            // Session tickets arrive after the handshake, so keep unwrapping until the echo comes back
+            while (appIn.position() == 0) {
+                if (unwrap(engine, channel, netIn, appIn).getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runTasks(engine);
+                }
+            }
+            engine.closeOutbound();
+            wrap(engine, channel, ByteBuffer.allocate(0), netOut);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final SSLSocket socket = (SSLSocket) serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.incrementAndGet();
+                executor.submit(() -> echo(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void echo(SSLSocket socket) {
+        try (final Socket closing = socket) {
+            final InputStream inputStream = closing.getInputStream();
+            final OutputStream outputStream = closing.getOutputStream();
+            final int read = inputStream.read();
+            if (read >= 0) {
+                outputStream.write(read);
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            // The client may close without reading everything the broker sent
+        }
+    }
+
+    private static SSLEngineResult.HandshakeStatus wrap(SSLEngine engine, SocketChannel channel, ByteBuffer source,
+                                                        ByteBuffer netOut) throws IOException {
+        netOut.clear();
+        final SSLEngineResult result = engine.wrap(source, netOut);
+        netOut.flip();
+        while (netOut.hasRemaining()) {
+            channel.write(netOut);
+        }
+        return result.getHandshakeStatus();
+    }
+
+    private static SSLEngineResult unwrap(SSLEngine engine, SocketChannel channel, ByteBuffer netIn,
+                                         ByteBuffer appIn) throws IOException {
+        while (true) {
+            netIn.flip();
+            final SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                return result;
+            }
+            if (channel.read(netIn) < 0) {
+                throw new EOFException("Broker closed the connection");
+            }
+        }
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Resumed handshakes reuse the session's certificate, so only full handshakes choose a server alias.
+     */
+    private final class CountingKeyManager extends X509ExtendedKeyManager {
+        private final X509ExtendedKeyManager delegate;
+
+        private CountingKeyManager(X509ExtendedKeyManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+            final String alias = delegate.chooseServerAlias(keyType, issuers, socket);
+            if (alias != null) {
+                fullHandshakes.incrementAndGet();
+            }
+            return alias;
+        }
+
+        @Override
+        public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+            final String alias = delegate.chooseEngineServerAlias(keyType, issuers, engine);
+            if (alias != null) {
+                fullHandshakes.incrementAndGet();
+            }
+            return alias;
+        }
+
+        @Override
+        public String[] getClientAliases(String keyType, Principal[] issuers) {
+            return delegate.getClientAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+            return delegate.chooseClientAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public String[] getServerAliases(String keyType, Principal[] issuers) {
+            return delegate.getServerAliases(keyType, issuers);
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            return delegate.getCertificateChain(alias);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String alias) {
+            return delegate.getPrivateKey(alias);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package sh.buildit.credhub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates EC certificates with a minimal DER encoder, since the JDK has no public API for it and keytool is far
+ * too slow for stores with thousands of entries.
+ */
+final class TestCertificates {
+    private static final String EC_WITH_SHA256 = "1.2.840.10045.4.3.2";
+    private static final String COMMON_NAME = "2.5.4.3";
+    private static final String BASIC_CONSTRAINTS = "2.5.29.19";
+    private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+    private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+    private static final long VALIDITY_MILLIS = 3650L * 24 * 60 * 60 * 1000;
+    private static final AtomicLong SERIAL = new AtomicLong(System.currentTimeMillis());
+
+    private TestCertificates() {
+    }
+
+    /**
+     * A certificate together with the key it certifies.
+     */
+    static final class Issued {
+        final X509Certificate certificate;
+        final KeyPair keyPair;
+
+        private Issued(X509Certificate certificate, KeyPair keyPair) {
+            this.certificate = certificate;
+            this.keyPair = keyPair;
+        }
+    }
+
+    static Issued selfSignedCa(String commonName) {
+        final KeyPair keyPair = newKeyPair();
+        return new Issued(create(commonName, keyPair, commonName, keyPair, true), keyPair);
+    }
+
+    static Issued issue(String commonName, Issued issuer, boolean ca) {
+        final KeyPair keyPair = newKeyPair();
+        final String issuerName = issuer.certificate.getSubjectX500Principal().getName().substring("CN=".length());
+        return new Issued(create(commonName, keyPair, issuerName, issuer.keyPair, ca), keyPair);
+    }
+
+    /**
+     * A trust store holding {@code entries} distinct self-signed CA certificates.
+     */
+    static KeyStore trustStore(String type, int entries) {
+        try {
+            final KeyStore keyStore = KeyStore.getInstance(type);
+            keyStore.load(null, null);
+            for (int i = 0; i < entries; i++) {
+                keyStore.setCertificateEntry("ca-" + i, selfSignedCa("Generated CA " + i).certificate);
+            }
+            return keyStore;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A key store holding a single key entry {@code alias} whose chain is issued by {@code issuer}.
+     */
+    static KeyStore keyStore(String type, String password, String alias, Issued issuer) {
+        try {
+            final Issued leaf = issue(alias, issuer, false);
+            final KeyStore keyStore = KeyStore.getInstance(type);
+            keyStore.load(null, null);
+            keyStore.setKeyEntry(alias, leaf.keyPair.getPrivate(), password.toCharArray(),
+                new Certificate[]{leaf.certificate, issuer.certificate});
+            return keyStore;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String encode(KeyStore keyStore, String password) {
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            keyStore.store(outputStream, password.toCharArray());
+            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static KeyPair newKeyPair() {
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static X509Certificate create(String subject, KeyPair subjectKey, String issuer, KeyPair issuerKey, boolean ca) {
+        try {
+            final byte[] algorithm = sequence(oid(EC_WITH_SHA256));
+            final long now = System.currentTimeMillis();
+            final byte[] extensions = concat(
+                ca ? extension(BASIC_CONSTRAINTS, true, sequence(tlv(0x01, new byte[]{(byte) 0xff}))) : new byte[0],
+                extension(SUBJECT_KEY_IDENTIFIER, false, tlv(0x04, keyIdentifier(subjectKey))),
+                extension(AUTHORITY_KEY_IDENTIFIER, false, sequence(tlv(0x80, keyIdentifier(issuerKey)))));
+            final byte[] tbs = sequence(
+                tlv(0xa0, integer(BigInteger.valueOf(2))),
+                integer(BigInteger.valueOf(SERIAL.incrementAndGet())),
+                algorithm,
+                name(issuer),
+                sequence(time(new Date(now - 60_000)), time(new Date(now + VALIDITY_MILLIS))),
+                name(subject),
+                subjectKey.getPublic().getEncoded(),
+                tlv(0xa3, sequence(extensions)));
+            final Signature signature = Signature.getInstance("SHA256withECDSA");
+            signature.initSign(issuerKey.getPrivate());
+            signature.update(tbs);
+            final byte[] certificate = sequence(tbs, algorithm, bitString(signature.sign()));
+            return (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(certificate));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] keyIdentifier(KeyPair keyPair) throws GeneralSecurityException {
+        return Arrays.copyOf(MessageDigest.getInstance("SHA-1").digest(keyPair.getPublic().getEncoded()), 20);
+    }
+
+    private static byte[] extension(String oid, boolean critical, byte[] value) {
+        return sequence(oid(oid), critical ? tlv(0x01, new byte[]{(byte) 0xff}) : new byte[0], tlv(0x04, value));
+    }
+
+    private static byte[] name(String commonName) {
+        return sequence(tlv(0x31, sequence(oid(COMMON_NAME), tlv(0x0c, commonName.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    private static byte[] time(Date date) {
+        final SimpleDateFormat format = new SimpleDateFormat("yyMMddHHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return tlv(0x17, format.format(date).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] integer(BigInteger value) {
+        return tlv(0x02, value.toByteArray());
+    }
+
+    private static byte[] bitString(byte[] value) {
+        return tlv(0x03, concat(new byte[]{0}, value));
+    }
+
+    private static byte[] oid(String dotted) {
+        final String[] parts = dotted.split("\\.");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Integer.parseInt(parts[0]) * 40 + Integer.parseInt(parts[1]));
+        for (int i = 2; i < parts.length; i++) {
+            long value = Long.parseLong(parts[i]);
+            final byte[] buffer = new byte[10];
+            int position = buffer.length;
+            buffer[--position] = (byte) (value & 0x7f);
+            while ((value >>>= 7) != 0) {
+                buffer[--position] = (byte) ((value & 0x7f) | 0x80);
+            }
+            out.write(buffer, position, buffer.length - position);
+        }
+        return tlv(0x06, out.toByteArray());
+    }
+
+    private static byte[] sequence(byte[]... contents) {
+        return tlv(0x30, concat(contents));
+    }
+
+    private static byte[] tlv(int tag, byte[] value) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+        if (value.length < 0x80) {
+            out.write(value.length);
+        } else {
+            final byte[] length = BigInteger.valueOf(value.length).toByteArray();
+            final int offset = length[0] == 0 ? 1 : 0;
+            out.write(0x80 | (length.length - offset));
+            out.write(length, offset, length.length - offset);
+        }
+        out.write(value, 0, value.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,58 @@
+package sh.buildit.credhub;
+
+import io.pivotal.cfenv.core.CfCredentials;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+final class TestStores {
+    static final String PASSWORD = "changeit";
+    static final String TYPE = "JKS";
+    static final String KEY_STORE = "stores/keystore.jks";
+    static final String TRUST_STORE = "stores/truststore.jks";
+    static final String BROKER_KEY_STORE = "stores/broker.jks";
+
+    private TestStores() {
+    }
+
+    static byte[] read(String resource) {
+        try (final InputStream inputStream = TestStores.class.getClassLoader().getResourceAsStream(resource);
+             final ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("Missing test resource " + resource);
+            }
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String encoded(String resource) {
+        return Base64.getEncoder().encodeToString(read(resource));
+    }
+
+    static Map<String, Object> credentialsData() {
+        final Map<String, Object> credentialsData = new HashMap<>();
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_LOCATION, encoded(KEY_STORE));
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_PASSWORD, PASSWORD);
+        credentialsData.put(CredHubKafkaEnvProcessor.KEY_STORE_TYPE, TYPE);
+        credentialsData.put(CredHubKafkaEnvProcessor.TRUST_STORE_LOCATION, encoded(TRUST_STORE));
+        credentialsData.put(CredHubKafkaEnvProcessor.TRUST_STORE_PASSWORD, PASSWORD);
+        credentialsData.put(CredHubKafkaEnvProcessor.TRUST_STORE_TYPE, TYPE);
+        return credentialsData;
+    }
+
+    static CfCredentials credentials() {
+        return new CfCredentials(credentialsData());
+    }
+}
@@ -0,0 +1,140 @@
+package sh.buildit.credhub;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrustStorePrunerTest {
+    private static final TestCertificates.Issued ROOT = TestCertificates.selfSignedCa("Root CA");
+    private static final TestCertificates.Issued INTERMEDIATE = TestCertificates.issue("Intermediate CA", ROOT, true);
+    private static final TestCertificates.Issued BROKER = TestCertificates.issue("broker", INTERMEDIATE, false);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void keepsIssuersUpToRoot() throws Exception {
+        final TrustStorePruner.Pruned pruned = pruner(BROKER.certificate).prune(trustStore());
+
+        assertEquals(new HashSet<>(Arrays.asList("root", "intermediate")), new HashSet<>(Collections.list(pruned.keyStore().aliases())));
+        assertEquals(new HashSet<>(Arrays.asList("unrelated-0", "unrelated-1", "unrelated-2")), pruned.dropped().keySet());
+        assertEquals("JKS", pruned.keyStore().getType());
+        assertTrue(pruned.report("trust-store").startsWith("Pruned trust store trust-store to 2 of 5 certificates"));
+    }
+
+    @Test
+    public void keepsOnlyTrustedCertificatesOfPresentedChain() throws Exception {
+        final KeyStore trustStore = trustStore();
+        trustStore.deleteEntry("intermediate");
+
+        final TrustStorePruner.Pruned pruned = pruner(BROKER.certificate, INTERMEDIATE.certificate).prune(trustStore);
+
+        assertEquals(Collections.singletonList("root"), Collections.list(pruned.keyStore().aliases()));
+    }
+
+    @Test
+    public void keepsPinnedBrokerCertificate() throws Exception {
+        final TestCertificates.Issued selfSigned = TestCertificates.selfSignedCa("pinned-broker");
+        final KeyStore trustStore = trustStore();
+        trustStore.setCertificateEntry("pinned", selfSigned.certificate);
+
+        final TrustStorePruner.Pruned pruned = pruner(selfSigned.certificate).prune(trustStore);
+
+        assertEquals(Collections.singletonList("pinned"), Collections.list(pruned.keyStore().aliases()));
+    }
+
+    @Test
+    public void keepsPinnedBrokerCertificateOfUntrustedIssuer() throws Exception {
+        final TestCertificates.Issued pinned = TestCertificates.issue("pinned-broker", TestCertificates.selfSignedCa("Pinning CA"), false);
+        final KeyStore trustStore = trustStore();
+        trustStore.setCertificateEntry("pinned", pinned.certificate);
+
+        final TrustStorePruner.Pruned pruned = pruner(pinned.certificate).prune(trustStore);
+
+        assertEquals(Collections.singletonList("pinned"), Collections.list(pruned.keyStore().aliases()));
+    }
+
+    @Test
+    public void keepsPinnedBrokerCertificateNextToItsIssuers() throws Exception {
+        final KeyStore trustStore = trustStore();
+        trustStore.setCertificateEntry("pinned", BROKER.certificate);
+
+        final TrustStorePruner.Pruned pruned = pruner(BROKER.certificate).prune(trustStore);
+
+        assertEquals(new HashSet<>(Arrays.asList("root", "intermediate", "pinned")), new HashSet<>(Collections.list(pruned.keyStore().aliases())));
+    }
+
+    @Test
+    public void ignoresCertificateWithIssuerNameButOtherKey() throws Exception {
+        final KeyStore trustStore = trustStore();
+        trustStore.setCertificateEntry("impostor", TestCertificates.selfSignedCa("Intermediate CA").certificate);
+
+        final TrustStorePruner.Pruned pruned = pruner(BROKER.certificate).prune(trustStore);
+
+        assertTrue(pruned.dropped().containsKey("impostor"));
+        assertEquals(new HashSet<>(Arrays.asList("root", "intermediate")), new HashSet<>(Collections.list(pruned.keyStore().aliases())));
+    }
+
+    @Test
+    public void rejectsBrokerWithoutTrustedIssuer() {
+        final TrustStorePruner pruner = pruner(TestCertificates.issue("stranger", TestCertificates.selfSignedCa("Stranger CA"), false).certificate);
+        assertThrows(IllegalArgumentException.class, () -> pruner.prune(trustStore()));
+    }
+
+    @Test
+    public void readsPemChainFiles() throws Exception {
+        final Path file = directory.resolve("broker.pem");
+        Files.write(file, (pem(BROKER.certificate) + pem(INTERMEDIATE.certificate)).getBytes(StandardCharsets.US_ASCII));
+
+        final TrustStorePruner pruner = TrustStorePruner.of(Collections.singletonList(file));
+
+        assertEquals(pruner(BROKER.certificate, INTERMEDIATE.certificate).toString(), pruner.toString());
+        assertEquals(3, pruner.prune(trustStore()).dropped().size());
+    }
+
+    @Test
+    public void rejectsFileWithoutCertificates() throws Exception {
+        final Path file = directory.resolve("empty.pem");
+        Files.write(file, new byte[0]);
+        assertThrows(IllegalArgumentException.class, () -> TrustStorePruner.of(Collections.singletonList(file)));
+    }
+
+    private static TrustStorePruner pruner(X509Certificate... chain) {
+        final Map<Path, List<X509Certificate>> chains = new LinkedHashMap<>();
+        chains.put(Paths.get("broker.pem"), Arrays.asList(chain));
+        return new TrustStorePruner(chains);
+    }
+
+    private static KeyStore trustStore() throws Exception {
+        final KeyStore trustStore = TestCertificates.trustStore("JKS", 0);
+        for (int i = 0; i < 3; i++) {
+            trustStore.setCertificateEntry("unrelated-" + i, TestCertificates.selfSignedCa("Unrelated CA " + i).certificate);
+        }
+        trustStore.setCertificateEntry("root", ROOT.certificate);
+        trustStore.setCertificateEntry("intermediate", INTERMEDIATE.certificate);
+        return trustStore;
+    }
+
+    private static String pem(X509Certificate certificate) throws Exception {
+        return "-----BEGIN CERTIFICATE-----\n"
+            + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(certificate.getEncoded())
+            + "\n-----END CERTIFICATE-----\n";
+    }
+}